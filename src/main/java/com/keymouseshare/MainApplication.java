@@ -14,6 +14,7 @@ import com.keymouseshare.network.DeviceDiscovery;
 import com.keymouseshare.storage.DeviceStorage;
 import com.keymouseshare.storage.VirtualDesktopStorage;
 import com.keymouseshare.uifx.*;
+import com.keymouseshare.util.AppRuntime;
 import com.keymouseshare.util.MacOSAccessibilityHelper;
 import com.keymouseshare.util.NetUtil;
 import javafx.application.Application;
@@ -28,7 +29,8 @@ import org.slf4j.LoggerFactory;
 
 import java.net.SocketException;
 import java.util.Map;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 主应用程序类
@@ -47,6 +49,11 @@ public class MainApplication extends Application implements DeviceListener, Virt
     private DeviceStorage deviceStorage = DeviceStorage.getInstance();
     private VirtualDesktopStorage virtualDesktopStorage = VirtualDesktopStorage.getInstance();
 
+    // 待显示的鼠标位置，高32位为x、低32位为y
+    private final AtomicLong uiMousePosition = new AtomicLong();
+    private final AtomicBoolean uiMouseUpdateScheduled = new AtomicBoolean(false);
+    private final Runnable uiMouseUpdateTask = this::updateMousePositionDisplay;
+
     public MainApplication() throws SocketException {
     }
 
@@ -78,6 +85,9 @@ public class MainApplication extends Application implements DeviceListener, Virt
         // 初始化Windows鼠标键盘钩子
         initMouseKeyBoard();
 
+        // 预创建屏幕切换时使用的透明遮罩
+        TransparentFullScreenFxUtils.prewarm();
+
         // 设置无装饰窗口样式
 //        primaryStage.initStyle(StageStyle.TRANSPARENT);
         
@@ -323,6 +333,8 @@ public class MainApplication extends Application implements DeviceListener, Virt
         virtualDesktopStorage.setApplyVirtualDesktopScreen(false);
         mouseKeyBoard.stopMouseKeyController();
 
+        // 最后关闭共享的IO线程组与定时线程
+        AppRuntime.getInstance().shutdown();
     }
 
     @Override
@@ -346,6 +358,8 @@ public class MainApplication extends Application implements DeviceListener, Virt
             virtualDesktopStorage.applyScreen(screenInfo);
         });
 
+        // 布局确定后编译屏幕拓扑，供边缘检测使用
+        virtualDesktopStorage.compileTopology();
         virtualDesktopStorage.setApplyVirtualDesktopScreen(true);
 
         // 初始化鼠标在虚拟桌面中的位置、更新当前激活的虚拟屏幕
@@ -365,34 +379,53 @@ public class MainApplication extends Application implements DeviceListener, Virt
     @Override
     public void onMouseMove(int x, int y) {
         if (virtualDesktopStorage.isApplyVirtualDesktopScreen()) {
+            ScreenInfo vScreenInfo = virtualDesktopStorage.getActiveScreen();
+            double[] transform = virtualDesktopStorage.getMouseLocationTransform();
             if (mouseKeyBoard.isEdgeMode()) {
-                ScreenInfo vScreenInfo = virtualDesktopStorage.getActiveScreen();
                 if(!mouseKeyBoard.isChangingScreen()){
-                    virtualDesktopStorage.setMouseLocation((int) (vScreenInfo.getVx() + x*virtualDesktopStorage.getMouseLocationTransform()[0]), (int) (vScreenInfo.getVy() + y*virtualDesktopStorage.getMouseLocationTransform()[1]));
-                    // 鼠标移动事件处理
-                    // 这里可以添加鼠标移动的特殊处理逻辑
-                    // 例如：发送鼠标移动事件到远程设备
-                    if (controlRequestManager != null) {
-                        // 发送鼠标移动事件到远程设备
-                        if (x != 0 || y != 0) {
-                            // 进行比例映射
-                            controlRequestManager.sendControlRequest(new ControlEvent(virtualDesktopStorage.getActiveScreen().getDeviceIp(), ControlEventType.MouseMoved.name(),
-                                    (virtualDesktopStorage.getMouseLocation()[0] - virtualDesktopStorage.getActiveScreen().getVx()),
-                                    (virtualDesktopStorage.getMouseLocation()[1] - virtualDesktopStorage.getActiveScreen().getVy())));
-                        }
+                    virtualDesktopStorage.setMouseLocation((int) (vScreenInfo.getVx() + x * transform[0]), (int) (vScreenInfo.getVy() + y * transform[1]));
+                    mouseKeyBoard.onMouseLocationChanged();
+                    // 发送鼠标移动事件到远程设备，高频路径只传递基本类型，不创建ControlEvent
+                    if (controlRequestManager != null && (x != 0 || y != 0)) {
+                        // 进行比例映射
+                        long location = virtualDesktopStorage.getMouseLocationSnapshot();
+                        controlRequestManager.sendMouseMove(vScreenInfo.getDeviceIp(),
+                                VirtualDesktopStorage.locationX(location) - vScreenInfo.getVx(),
+                                VirtualDesktopStorage.locationY(location) - vScreenInfo.getVy());
                     }
                 }
             } else {
-                logger.debug("鼠标移动：{} {} {}", x, y, mouseKeyBoard.isEdgeMode());
-                ScreenInfo vScreenInfo = virtualDesktopStorage.getActiveScreen();
-                virtualDesktopStorage.setMouseLocation((int) (vScreenInfo.getVx() + x*virtualDesktopStorage.getMouseLocationTransform()[0]), (int) (vScreenInfo.getVy() + y*virtualDesktopStorage.getMouseLocationTransform()[1]));
+                if (logger.isDebugEnabled()) {
+                    logger.debug("鼠标移动：{} {} {}", x, y, mouseKeyBoard.isEdgeMode());
+                }
+                virtualDesktopStorage.setMouseLocation((int) (vScreenInfo.getVx() + x * transform[0]), (int) (vScreenInfo.getVy() + y * transform[1]));
+                mouseKeyBoard.onMouseLocationChanged();
             }
         }
-        Platform.runLater(() -> {
-            if (mousePositionDisplay != null) {
-                mousePositionDisplay.updateMousePosition(x, y);
-            }
-        });
+        // 界面只显示最新位置，每个JavaFX脉冲最多刷新一次
+        uiMousePosition.set(((long) x << 32) | (y & 0xFFFFFFFFL));
+        if (uiMouseUpdateScheduled.compareAndSet(false, true)) {
+            Platform.runLater(uiMouseUpdateTask);
+        }
+    }
+
+    private void updateMousePositionDisplay() {
+        uiMouseUpdateScheduled.set(false);
+        long position = uiMousePosition.get();
+        if (mousePositionDisplay != null) {
+            mousePositionDisplay.updateMousePosition((int) (position >> 32), (int) position);
+        }
+    }
+
+    /**
+     * 创建发往激活屏幕的鼠标事件，坐标为虚拟鼠标在目标屏幕内的位置，与鼠标移动一致
+     */
+    private ControlEvent targetEvent(ControlEventType type) {
+        ScreenInfo activeScreen = virtualDesktopStorage.getActiveScreen();
+        long location = virtualDesktopStorage.getMouseLocationSnapshot();
+        return new ControlEvent(activeScreen.getDeviceIp(), type.name(),
+                VirtualDesktopStorage.locationX(location) - activeScreen.getVx(),
+                VirtualDesktopStorage.locationY(location) - activeScreen.getVy());
     }
 
     @Override
@@ -403,7 +436,7 @@ public class MainApplication extends Application implements DeviceListener, Virt
             // 发送鼠标按下事件到远程设备
             // 如果有激活的屏幕，设置设备IP和屏幕名
             if (virtualDesktopStorage.getActiveScreen() != null) {
-                ControlEvent event = new ControlEvent(virtualDesktopStorage.getActiveScreen().getDeviceIp(), ControlEventType.MousePressed.name(), x, y);
+                ControlEvent event = targetEvent(ControlEventType.MousePressed);
                 event.setButton(button);
                 event.setScreenName(virtualDesktopStorage.getActiveScreen().getScreenName());
                 controlRequestManager.sendControlRequest(event);
@@ -418,7 +451,7 @@ public class MainApplication extends Application implements DeviceListener, Virt
             // 发送鼠标释放事件到远程设备
             // 如果有激活的屏幕，设置设备IP和屏幕名
             if (virtualDesktopStorage.getActiveScreen() != null) {
-                ControlEvent event = new ControlEvent(virtualDesktopStorage.getActiveScreen().getDeviceIp(), ControlEventType.MouseReleased.name(), x, y);
+                ControlEvent event = targetEvent(ControlEventType.MouseReleased);
                 event.setButton(button);
                 event.setScreenName(virtualDesktopStorage.getActiveScreen().getScreenName());
                 controlRequestManager.sendControlRequest(event);
@@ -433,7 +466,7 @@ public class MainApplication extends Application implements DeviceListener, Virt
             // 创建一个特殊的控制事件来表示滚轮事件
             // 如果有激活的屏幕，设置设备IP和屏幕名
             if (virtualDesktopStorage.getActiveScreen() != null) {
-                ControlEvent event = new ControlEvent(virtualDesktopStorage.getActiveScreen().getDeviceIp(), ControlEventType.MouseWheel.name(), x, y);
+                ControlEvent event = targetEvent(ControlEventType.MouseWheel);
                 event.setButton(rotation); // 使用button字段存储滚轮旋转值
                 event.setScreenName(virtualDesktopStorage.getActiveScreen().getScreenName());
                 controlRequestManager.sendControlRequest(event);
@@ -471,34 +504,12 @@ public class MainApplication extends Application implements DeviceListener, Virt
 
     @Override
     public void onEnterEdgeMode() {
-//        Platform.runLater(TransparentFullScreenFxUtils::openTransparentOverlayHiddenCursor);
-
-        FutureTask<Void> task = new FutureTask<>(() -> {
-            TransparentFullScreenFxUtils.openTransparentOverlayHiddenCursor();
-            return null;
-        });
-        Platform.runLater(task);
-        try {
-            task.get();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        // 不等待遮罩显示完成，屏幕切换线程立即继续；遮罩生效后再定位光标
+        TransparentFullScreenFxUtils.requestShow(() -> mouseKeyBoard.onEdgeOverlayChanged(true));
     }
 
     @Override
     public void onExitEdgeMode() {
-
-//        Platform.runLater(TransparentFullScreenFxUtils::closeFullScreenAndRestoreCursor);
-
-        FutureTask<Void> task = new FutureTask<>(() -> {
-            TransparentFullScreenFxUtils.closeFullScreenAndRestoreCursor();
-            return null;
-        });
-        Platform.runLater(task);
-        try {
-            task.get();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        TransparentFullScreenFxUtils.requestHide(() -> mouseKeyBoard.onEdgeOverlayChanged(false));
     }
 }
\ No newline at end of file
@@ -12,6 +12,7 @@ public class ControlEvent {
     private int button;
     private int keyCode;
     private String data;
+    private int seq; // UDP运动通道的位置序号，0表示不属于运动序列；Ping/Pong中为Ping编号
 
     public ControlEvent() {
     }
@@ -112,4 +113,12 @@ public class ControlEvent {
     public void setData(String data) {
         this.data = data;
     }
+
+    public int getSeq() {
+        return seq;
+    }
+
+    public void setSeq(int seq) {
+        this.seq = seq;
+    }
 }
\ No newline at end of file
@@ -1,12 +1,63 @@
 package com.keymouseshare.bean;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum ControlEventType {
-    MouseClicked,
-    MousePressed,
-    MouseReleased,
-    MouseMoved,
-    MouseDragged,
-    MouseWheel,  // 添加鼠标滚轮事件类型
-    KeyPressed,
-    KeyReleased,
-}
\ No newline at end of file
+    MouseClicked(1),
+    MousePressed(2),
+    MouseReleased(3),
+    MouseMoved(4),
+    MouseDragged(5),
+    MouseWheel(6),  // 添加鼠标滚轮事件类型
+    KeyPressed(7),
+    KeyReleased(8),
+    Handshake(9), // 连接握手，用于协商编码等能力
+    Ping(10), // 控制连接保活探测，服务端发出
+    Pong(11), // 控制连接保活应答，客户端回复
+    MotionChannel(12), // 客户端告知UDP运动通道端口，x为端口号，y为冗余偏好
+    MotionReport(13), // 客户端上报运动通道丢包率，x为千分比
+    ReleaseAll(14), // 服务端重置会话后要求客户端释放所有按下的键和按钮
+    ;
+
+    private static final ControlEventType[] BY_CODE = new ControlEventType[32];
+    private static final Map<String, ControlEventType> BY_NAME = new HashMap<>();
+
+    static {
+        for (ControlEventType type : values()) {
+            BY_CODE[type.code] = type;
+            BY_NAME.put(type.name(), type);
+        }
+    }
+
+    // 二进制编码中使用的单字节类型标识，不可随意修改
+    private final byte code;
+
+    ControlEventType(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * 根据类型标识获取事件类型
+     *
+     * @param code 类型标识
+     * @return 事件类型，未知标识返回null
+     */
+    public static ControlEventType fromCode(int code) {
+        return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    /**
+     * 根据类型名称获取事件类型，与valueOf不同，未知名称不抛异常
+     *
+     * @param name 类型名称
+     * @return 事件类型，未知名称返回null
+     */
+    public static ControlEventType fromName(String name) {
+        return name != null ? BY_NAME.get(name) : null;
+    }
+}
@@ -0,0 +1,34 @@
+package com.keymouseshare.bean;
+
+/**
+ * 精简心跳
+ * 只携带设备标识、角色、连接状态和布局版本号，屏幕信息仅在布局版本变化或对端请求时随完整心跳发送
+ */
+public class DeviceHeartbeat {
+    private String ipAddress;
+    private String deviceType;
+    private String connectionStatus;
+    private int layoutVersion;
+
+    public DeviceHeartbeat() {
+    }
+
+    public DeviceHeartbeat(DeviceInfo device) {
+        this.ipAddress = device.getIpAddress();
+        this.deviceType = device.getDeviceType();
+        this.connectionStatus = device.getConnectionStatus();
+        this.layoutVersion = device.getLayoutVersion();
+    }
+
+    public String getIpAddress() { return ipAddress; }
+    public void setIpAddress(String ipAddress) { this.ipAddress = ipAddress; }
+
+    public String getDeviceType() { return deviceType; }
+    public void setDeviceType(String deviceType) { this.deviceType = deviceType; }
+
+    public String getConnectionStatus() { return connectionStatus; }
+    public void setConnectionStatus(String connectionStatus) { this.connectionStatus = connectionStatus; }
+
+    public int getLayoutVersion() { return layoutVersion; }
+    public void setLayoutVersion(int layoutVersion) { this.layoutVersion = layoutVersion; }
+}
@@ -3,6 +3,7 @@ package com.keymouseshare.bean;
 import com.keymouseshare.bean.ScreenInfo;
 
 import java.util.List;
+import java.util.Objects;
 
 /**
  * 设备信息类
@@ -15,6 +16,7 @@ public class DeviceInfo {
     private String deviceName;
     private String deviceType; // 设备类型：SERVER 或 CLIENT
     private String connectionStatus; // 连接状态：CONNECTED, DISCONNECTED, PENDING_AUTHORIZATION
+    private int layoutVersion; // 设备名称与屏幕布局的版本号，布局不变时精简心跳不再携带屏幕信息
 
     public DeviceInfo() {
         this.deviceType = "C"; // 默认设备类型为客户端
@@ -48,4 +50,22 @@ public class DeviceInfo {
     
     public String getConnectionStatus() { return connectionStatus; }
     public void setConnectionStatus(String connectionStatus) { this.connectionStatus = connectionStatus; }
+
+    public int getLayoutVersion() { return layoutVersion; }
+    public void setLayoutVersion(int layoutVersion) { this.layoutVersion = layoutVersion; }
+
+    /**
+     * 根据设备名称和全部屏幕参数计算布局版本号
+     */
+    public int computeLayoutVersion() {
+        int version = Objects.hashCode(deviceName);
+        if (screens != null) {
+            for (ScreenInfo screen : screens) {
+                version = 31 * version + Objects.hash(screen.getDeviceIp(), screen.getScreenName(),
+                        screen.getWidth(), screen.getHeight(), screen.getDx(), screen.getDy(),
+                        screen.getVx(), screen.getVy(), screen.getMx(), screen.getMy());
+            }
+        }
+        return version;
+    }
 }
\ No newline at end of file
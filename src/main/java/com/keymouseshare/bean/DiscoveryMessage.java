@@ -3,6 +3,7 @@ package com.keymouseshare.bean;
 public class DiscoveryMessage {
     private MessageType type;
     private DeviceInfo deviceInfo;
+    private DeviceHeartbeat heartbeat;
 
     public DiscoveryMessage() {
     }
@@ -16,6 +17,11 @@ public class DiscoveryMessage {
         this.deviceInfo = deviceInfo;
     }
 
+    public DiscoveryMessage(MessageType type, DeviceHeartbeat heartbeat) {
+        this.type = type;
+        this.heartbeat = heartbeat;
+    }
+
     public MessageType getType() {
         return type;
     }
@@ -32,4 +38,12 @@ public class DiscoveryMessage {
         this.deviceInfo = deviceInfo;
     }
 
+    public DeviceHeartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    public void setHeartbeat(DeviceHeartbeat heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
 }
@@ -2,6 +2,9 @@ package com.keymouseshare.bean;
 
 public enum MessageType {
     DEVICE_HEARTBEAT,  // 设备心跳广播消息 用于同步设备信息
+    DEVICE_HEARTBEAT_LITE, // 精简心跳 只携带角色、状态和布局版本号
+    LAYOUT_REQUEST, // 请求对端回复完整心跳
+    DISCOVERY_PROBE, // 启动探测 对端随机延时后单播回复完整心跳
     DEVICE_OFF,  // 设备离线
     SERVER_START, // 服务器启动
     SERVER_STOP, // 服务器关闭
@@ -1,124 +1,361 @@
 package com.keymouseshare.keyboard;
 
+import com.keymouseshare.util.LatencyRecorder;
+import com.keymouseshare.util.MouseEdgeDetector;
 import com.keymouseshare.util.SlidingCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.*;
 import java.awt.event.KeyEvent;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 public class BaseMouseKeyBoard {
 
     private static final Logger logger = LoggerFactory.getLogger(BaseMouseKeyBoard.class);
 
-    private Robot keyBoardRobot;
-    private Robot mouseRobot;
+    // 流水线中的事件类型
+    private static final int EVENT_MOUSE_MOVE = 1;
+    private static final int EVENT_MOUSE_PRESS = 2;
+    private static final int EVENT_MOUSE_RELEASE = 3;
+    private static final int EVENT_MOUSE_WHEEL = 4;
+    private static final int EVENT_KEY_PRESS = 5;
+    private static final int EVENT_KEY_RELEASE = 6;
+    private static final int EVENT_RELEASE_ALL = 7;
+    private static final int EVENT_TRANSITION = 8;
 
-    // 线程池用于处理键盘和鼠标事件
-    private final ExecutorService keyboardExecutor = Executors.newSingleThreadExecutor(r -> {
-        Thread t = new Thread(r, "Keyboard-Handler");
-        t.setDaemon(true);
-        return t;
-    });
+    private final Robot robot;
 
-    private final ExecutorService mouseExecutor = Executors.newSingleThreadExecutor(r -> {
-        Thread t = new Thread(r, "Mouse-Handler");
-        t.setDaemon(true);
-        return t;
-    });
+    // 键盘与鼠标事件共用一条有序注入流水线，保证Ctrl+点击、Shift+拖拽等组合的先后顺序
+    // 等待策略可通过 -Dkeymouseshare.inject.wait=blocking|yielding|busy-spin 配置
+    private final InjectionPipeline pipeline = new InjectionPipeline(1024,
+            InjectionPipeline.WaitStrategy.fromName(System.getProperty("keymouseshare.inject.wait")),
+            this::dispatch);
+
+    // 事件不携带位置
+    private static final long NO_PENDING_MOVE = Long.MIN_VALUE;
+
+    // 槽位中表示空的x值，24位有符号坐标的最小值，不会是实际坐标
+    private static final int EMPTY_SLOT_X = -(1 << 23);
+
+    // 最新待注入的鼠标绝对位置，只保留最新值：高16位为代数，其后24位为x、低24位为y
+    // 每个离散事件取走槽位时代数加一，移动事件只注入与自己提交时同一代的位置，
+    // 排在离散事件之前的移动事件不会取到离散事件之后才写入的位置
+    private final AtomicLong pendingMove = new AtomicLong(slot(0, EMPTY_SLOT_X, 0));
+
+    // 被跳过的过期鼠标移动数量
+    private final LongAdder skippedMoves = new LongAdder();
+
+    // 同一按键/鼠标按钮按下与释放之间的最小间隔，部分系统和应用间隔过短会丢失点击
+    // 可通过 -Dkeymouseshare.inject.gapMs 调整，0表示不插入间隔
+    private static final long MIN_PRESS_RELEASE_GAP_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("keymouseshare.inject.gapMs", 5));
+
+    // 各按键最近一次按下的时间（纳秒），仅由注入线程访问
+    private final long[] keyPressNanos = new long[1024];
+    // 各鼠标按钮最近一次按下的时间（纳秒），按按钮掩码位序索引，仅由注入线程访问
+    private final long[] buttonPressNanos = new long[32];
+    // 已注入按下但尚未释放的按键与鼠标按钮（按位序），仅由注入线程访问
+    private final BitSet pressedKeys = new BitSet();
+    private final BitSet pressedButtons = new BitSet();
+
+    // 事件从提交到注入完成的延迟
+    private final LatencyRecorder injectLatency = new LatencyRecorder("注入延迟", 1024, 1000);
 
     // 组合键缓存
     SlidingCache<Integer, Integer> sessionCache = new SlidingCache<>(3000);
 
     public BaseMouseKeyBoard() {
+        this(createRobot());
+    }
+
+    /**
+     * 使用指定的Robot注入事件，Robot为null时丢弃所有事件
+     */
+    BaseMouseKeyBoard(Robot robot) {
+        this.robot = robot;
+        // Robot就绪后再启动注入线程
+        pipeline.start();
+    }
+
+    private static Robot createRobot() {
         try {
-            mouseRobot = new Robot();
-            keyBoardRobot = new Robot();
+            return new Robot();
         } catch (AWTException e) {
             logger.error("无法创建Robot实例 {}", e.getMessage());
+            return null;
         }
     }
 
-    // 键盘事件提交到键盘线程处理
     public void keyPress(int keyCode) {
-        keyboardExecutor.submit(() -> {
-            if (keyBoardRobot != null) {
-//                sessionCache.put(keyCode, keyCode);
-//                if (sessionCache.getKeys().size() > 1) {
-//                    pressCombination();
-//                } else {
-                    keyBoardRobot.keyPress(keyCode);
-                    keyBoardRobot.delay(50);
-//                }
-            }
-        });
+        pipeline.publish(EVENT_KEY_PRESS, keyCode, takePendingMove());
     }
 
     public void keyRelease(int keyCode) {
-        keyboardExecutor.submit(() -> {
-            if (keyBoardRobot != null) {
-                keyBoardRobot.keyRelease(keyCode);
-//                sessionCache.remove(keyCode);
-                keyBoardRobot.delay(50);
-            }
-        });
+        pipeline.publish(EVENT_KEY_RELEASE, keyCode, takePendingMove());
     }
 
-    // 鼠标事件提交到鼠标线程处理
+    // 鼠标移动只更新最新位置槽位，槽位为空时才向流水线提交一次移动事件，事件携带槽位当前的代数
     public void mouseMove(int x, int y) {
-        mouseExecutor.submit(() -> {
-            if (mouseRobot != null) {
-                mouseRobot.mouseMove(x, y);
-            }
-        });
+        long previous;
+        do {
+            previous = pendingMove.get();
+        } while (!pendingMove.compareAndSet(previous, slot(slotEpoch(previous), x, y)));
+        if (slotX(previous) == EMPTY_SLOT_X) {
+            pipeline.publish(EVENT_MOUSE_MOVE, slotEpoch(previous), NO_PENDING_MOVE);
+        } else {
+            // 上一个位置还未注入就被新位置覆盖
+            skippedMoves.increment();
+        }
     }
 
+    // 其余事件先取走槽位中的位置一并提交，保证与之前的移动保持先后顺序
     public void mousePress(int button, int x, int y) {
-        mouseExecutor.submit(() -> {
-            if (mouseRobot != null) {
+        pipeline.publish(EVENT_MOUSE_PRESS, button, takePendingMove());
+    }
+
+    public void mouseRelease(int button, int x, int y) {
+        pipeline.publish(EVENT_MOUSE_RELEASE, button, takePendingMove());
+    }
+
+    public void mouseWheel(int wheelAmount) {
+        pipeline.publish(EVENT_MOUSE_WHEEL, wheelAmount, takePendingMove());
+    }
+
+    // 携带自身坐标的事件在自身坐标执行，槽位中尚未注入的位置早于该事件，直接丢弃，
+    // 并推进代数，之后的移动重新提交移动事件，排在该事件之后注入
+    public void mousePressAt(int button, int x, int y) {
+        discardPendingMove();
+        pipeline.publish(EVENT_MOUSE_PRESS, button, pack(x, y));
+    }
+
+    public void mouseReleaseAt(int button, int x, int y) {
+        discardPendingMove();
+        pipeline.publish(EVENT_MOUSE_RELEASE, button, pack(x, y));
+    }
+
+    public void mouseWheelAt(int wheelAmount, int x, int y) {
+        discardPendingMove();
+        pipeline.publish(EVENT_MOUSE_WHEEL, wheelAmount, pack(x, y));
+    }
+
+    // 控制端重置会话或连接断开时释放所有按下的键，避免丢失的释放事件导致按键卡住
+    public void releaseAll() {
+        pipeline.publish(EVENT_RELEASE_ALL, 0, takePendingMove());
+    }
+
+    /**
+     * 屏幕切换时把光标定位到新位置，注入线程实际移动光标后才记录切换完成
+     */
+    protected void warpForTransition(int x, int y) {
+        discardPendingMove();
+        pipeline.publish(EVENT_TRANSITION, 0, pack(x, y));
+    }
+
+    /**
+     * 屏幕切换不需要移动本机光标时，在此前提交的事件注入完成后记录切换完成
+     */
+    protected void markTransition() {
+        pipeline.publish(EVENT_TRANSITION, 0, takePendingMove());
+    }
+
+    /**
+     * 在注入线程中按提交顺序执行事件
+     */
+    private void dispatch(int kind, int value, long move, long submittedNanos) {
+        if (robot == null) {
+            return;
+        }
+        if (kind == EVENT_MOUSE_MOVE) {
+            // 移动事件注入槽位中此刻最新的位置；代数已变化说明该位置已由之后的离散事件取走，
+            // 槽位中的新位置另有移动事件排在离散事件之后
+            applyMove(takePendingMove(value));
+            return;
+        }
+        applyMove(move);
+        switch (kind) {
+            case EVENT_MOUSE_PRESS:
 //                if (!sessionCache.isEmpty()) {
 //                    // 注意：这里可能需要同步机制确保组合键状态一致性
 //                    pressCombination();
 //                }
-                mouseRobot.mousePress(button);
-                mouseRobot.delay(50);
-            }
-        });
+                robot.mousePress(value);
+                markPressed(buttonPressNanos, Integer.numberOfTrailingZeros(value));
+                pressedButtons.set(Integer.numberOfTrailingZeros(value));
+                break;
+            case EVENT_MOUSE_RELEASE:
+                awaitReleaseGap(buttonPressNanos, Integer.numberOfTrailingZeros(value));
+                robot.mouseRelease(value);
+                pressedButtons.clear(Integer.numberOfTrailingZeros(value));
+                break;
+            case EVENT_MOUSE_WHEEL:
+                robot.mouseWheel(value);
+                break;
+            case EVENT_KEY_PRESS:
+//                sessionCache.put(keyCode, keyCode);
+//                if (sessionCache.getKeys().size() > 1) {
+//                    pressCombination();
+//                } else {
+                robot.keyPress(value);
+                markPressed(keyPressNanos, value);
+                pressedKeys.set(value);
+//                }
+                break;
+            case EVENT_KEY_RELEASE:
+                awaitReleaseGap(keyPressNanos, value);
+                robot.keyRelease(value);
+                pressedKeys.clear(value);
+//                sessionCache.remove(keyCode);
+                break;
+            case EVENT_RELEASE_ALL:
+                releasePressed();
+                break;
+            case EVENT_TRANSITION:
+                MouseEdgeDetector.recordTransitionComplete();
+                break;
+            default:
+                logger.warn("未知的注入事件类型: {}", kind);
+                return;
+        }
+        injectLatency.recordSince(submittedNanos);
     }
 
-    public void mouseRelease(int button, int x, int y) {
-        mouseExecutor.submit(() -> {
-            if (mouseRobot != null) {
-                mouseRobot.mouseRelease(button);
-                mouseRobot.delay(50);
-            }
-        });
+    private void releasePressed() {
+        int keys = pressedKeys.cardinality();
+        int buttons = pressedButtons.cardinality();
+        for (int key = pressedKeys.nextSetBit(0); key >= 0; key = pressedKeys.nextSetBit(key + 1)) {
+            robot.keyRelease(key);
+        }
+        for (int bit = pressedButtons.nextSetBit(0); bit >= 0; bit = pressedButtons.nextSetBit(bit + 1)) {
+            robot.mouseRelease(1 << bit);
+        }
+        pressedKeys.clear();
+        pressedButtons.clear();
+        if (keys + buttons > 0) {
+            logger.info("已释放 {} 个按键和 {} 个鼠标按钮", keys, buttons);
+        }
     }
 
-    public void mouseWheel(int wheelAmount) {
-        mouseExecutor.submit(() -> {
-            if (mouseRobot != null) {
-                mouseRobot.mouseWheel(wheelAmount);
-                mouseRobot.delay(50);
+    /**
+     * 离散事件取走槽位中的位置并推进代数
+     *
+     * @return 取走的位置，槽位为空时返回 {@link #NO_PENDING_MOVE}
+     */
+    private long takePendingMove() {
+        long current;
+        do {
+            current = pendingMove.get();
+        } while (!pendingMove.compareAndSet(current, slot(slotEpoch(current) + 1, EMPTY_SLOT_X, 0)));
+        return slotX(current) == EMPTY_SLOT_X ? NO_PENDING_MOVE : pack(slotX(current), slotY(current));
+    }
+
+    private void discardPendingMove() {
+        if (takePendingMove() != NO_PENDING_MOVE) {
+            skippedMoves.increment();
+        }
+    }
+
+    /**
+     * 移动事件取走槽位中同一代的位置，代数不同时不取
+     */
+    private long takePendingMove(int epoch) {
+        long current;
+        do {
+            current = pendingMove.get();
+            if (slotX(current) == EMPTY_SLOT_X || slotEpoch(current) != epoch) {
+                return NO_PENDING_MOVE;
             }
-        });
+        } while (!pendingMove.compareAndSet(current, slot(epoch, EMPTY_SLOT_X, 0)));
+        return pack(slotX(current), slotY(current));
+    }
+
+    private void applyMove(long move) {
+        if (move != NO_PENDING_MOVE) {
+            robot.mouseMove((int) (move >> 32), (int) move);
+        }
+    }
+
+    private static void markPressed(long[] pressNanos, int index) {
+        if (index >= 0 && index < pressNanos.length) {
+            pressNanos[index] = System.nanoTime();
+        }
+    }
+
+    /**
+     * 释放前检查距按下是否已满足最小间隔，不足时只补足剩余时间
+     * 其它事件不受影响，立即注入
+     */
+    private static void awaitReleaseGap(long[] pressNanos, int index) {
+        if (MIN_PRESS_RELEASE_GAP_NANOS <= 0 || index < 0 || index >= pressNanos.length || pressNanos[index] == 0) {
+            return;
+        }
+        long deadline = pressNanos[index] + MIN_PRESS_RELEASE_GAP_NANOS;
+        pressNanos[index] = 0;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * 获取尚未注入的事件数量
+     */
+    public long getInjectionBacklog() {
+        return pipeline.getBacklog();
+    }
+
+    /**
+     * 获取事件注入延迟统计
+     */
+    public LatencyRecorder getInjectLatency() {
+        return injectLatency;
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static long slot(int epoch, int x, int y) {
+        return ((long) (epoch & 0xFFFF) << 48) | ((x & 0xFFFFFFL) << 24) | (y & 0xFFFFFFL);
+    }
+
+    private static int slotEpoch(long slot) {
+        return (int) (slot >>> 48);
+    }
+
+    private static int slotX(long slot) {
+        return (int) (slot << 16 >> 40);
+    }
+
+    private static int slotY(long slot) {
+        return (int) (slot << 40 >> 40);
+    }
+
+    /**
+     * 获取因被更新位置覆盖而跳过的鼠标移动数量
+     *
+     * @return 跳过的移动数量
+     */
+    public long getSkippedMoveCount() {
+        return skippedMoves.sum();
     }
 
     private void pressCombination() {
-        if (keyBoardRobot != null) {
+        if (robot != null) {
             for (int keyCode : sessionCache.getValues()) {
-                keyBoardRobot.keyPress(keyCode);
-                keyBoardRobot.delay(50);
+                robot.keyPress(keyCode);
+                robot.delay(50);
             }
         }
     }
 
-    // 关闭线程池
+    // 关闭注入流水线
     public void shutdown() {
-        keyboardExecutor.shutdown();
-        mouseExecutor.shutdown();
+        pipeline.shutdown();
     }
 
     /**
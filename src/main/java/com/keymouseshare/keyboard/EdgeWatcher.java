@@ -0,0 +1,134 @@
+package com.keymouseshare.keyboard;
+
+import com.keymouseshare.util.AppRuntime;
+import com.keymouseshare.util.MouseEdgeDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事件驱动的屏幕边缘检测
+ * <p>
+ * 只有虚拟鼠标位置更新时才执行一次边缘检测，连续的更新在检测线程忙时合并为一次；
+ * 鼠标停在边缘等待防误触时间时，只安排一个延时复查。鼠标静止时检测线程不会被唤醒。
+ * 检测运行在应用共享的定时线程上。
+ */
+public class EdgeWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(EdgeWatcher.class);
+
+    private final String name;
+    private final Runnable check;
+    private final Runnable evaluateTask = this::evaluate;
+    private final Runnable recheckTask = this::recheck;
+
+    private volatile boolean running = false;
+    private final AtomicBoolean evaluationScheduled = new AtomicBoolean(false);
+    // 仅在定时线程中访问
+    private ScheduledFuture<?> recheck;
+
+    // 边缘检测执行次数
+    private final LongAdder evaluations = new LongAdder();
+    private long startNanos;
+
+    /**
+     * @param name  名称，用于日志
+     * @param check 边缘检测逻辑，只在共享定时线程中执行
+     */
+    public EdgeWatcher(String name, Runnable check) {
+        this.name = name;
+        this.check = check;
+    }
+
+    public synchronized void start() {
+        stop();
+        evaluations.reset();
+        startNanos = System.nanoTime();
+        running = true;
+        // 启动时先检测一次当前位置
+        onLocationChanged();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // 复查任务只在定时线程中读写，交给定时线程取消
+        timer().execute(this::cancelRecheck);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long count = evaluations.sum();
+        logger.info("{} 已停止，共检测 {} 次，平均 {} 次/秒", name, count,
+                String.format("%.1f", elapsedNanos > 0 ? count * 1e9 / elapsedNanos : 0));
+    }
+
+    /**
+     * 虚拟鼠标位置已更新，可在任意线程调用
+     */
+    public void onLocationChanged() {
+        if (running && evaluationScheduled.compareAndSet(false, true)) {
+            try {
+                timer().execute(evaluateTask);
+            } catch (Exception e) {
+                // 已停止
+                evaluationScheduled.set(false);
+            }
+        }
+    }
+
+    private void evaluate() {
+        evaluationScheduled.set(false);
+        cancelRecheck();
+        if (!running) {
+            return;
+        }
+        runCheck();
+    }
+
+    private void recheck() {
+        recheck = null;
+        if (running) {
+            runCheck();
+        }
+    }
+
+    private void runCheck() {
+        evaluations.increment();
+        try {
+            check.run();
+        } catch (Exception e) {
+            logger.error("边缘检测失败: {}", e.getMessage(), e);
+        }
+        // 停在边缘但未满足防误触时间，到期后复查一次
+        long dwellMillis = MouseEdgeDetector.getPendingDwellMillis();
+        if (dwellMillis >= 0 && running && recheck == null) {
+            try {
+                recheck = timer().schedule(recheckTask, dwellMillis, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // 已停止
+            }
+        }
+    }
+
+    private void cancelRecheck() {
+        if (recheck != null) {
+            recheck.cancel(false);
+            recheck = null;
+        }
+    }
+
+    private static ScheduledExecutorService timer() {
+        return AppRuntime.getInstance().timer();
+    }
+
+    /**
+     * 获取边缘检测执行次数
+     */
+    public long getEvaluationCount() {
+        return evaluations.sum();
+    }
+}
@@ -0,0 +1,253 @@
+package com.keymouseshare.keyboard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 键盘鼠标事件注入流水线
+ * <p>
+ * 预分配的环形缓冲区（Disruptor风格）：多个生产者通过序号抢占槽位、填写后发布，
+ * 唯一的注入线程按序号顺序消费，因此所有事件严格按提交顺序注入，运行期不产生对象。
+ * 注入线程空闲时的等待方式由 {@link WaitStrategy} 决定。
+ * <p>
+ * 提交从不阻塞：调用方可能是共享的Netty IO线程，注入线程卡住（如系统弹窗）时不能拖住网络收发。
+ * 缓冲区满时事件进入溢出队列，此后的事件也都进入溢出队列直到其清空，
+ * 注入线程处理完缓冲区再按顺序处理溢出队列，先后顺序不变。溢出队列的长度由调用方通过
+ * {@link #getBacklog()} 施加背压来限制。
+ */
+public class InjectionPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(InjectionPipeline.class);
+
+    /**
+     * 注入线程的等待策略
+     */
+    public enum WaitStrategy {
+        BLOCKING,  // 挂起等待生产者唤醒，空闲时不占CPU
+        YIELDING,  // 自旋后让出CPU，延迟与CPU占用折中
+        BUSY_SPIN; // 持续自旋，延迟最低但独占一个核心，用于低延迟模式
+
+        public static WaitStrategy fromName(String name) {
+            if (name != null) {
+                switch (name.trim().toLowerCase()) {
+                    case "yielding":
+                        return YIELDING;
+                    case "busy-spin":
+                    case "busyspin":
+                        return BUSY_SPIN;
+                    default:
+                        break;
+                }
+            }
+            return BLOCKING;
+        }
+    }
+
+    /**
+     * 事件消费者，只在注入线程中调用
+     */
+    public interface Handler {
+        void onEvent(int kind, int value, long move, long submittedNanos);
+    }
+
+    /**
+     * 环形缓冲区槽位，字段在发布前由生产者写入
+     */
+    private static final class Slot {
+        int kind;
+        int value;
+        long move;
+        long submittedNanos;
+        // 已发布的序号，注入线程据此判断槽位是否可读
+        volatile long sequence = -1;
+    }
+
+    /**
+     * 缓冲区满时暂存的事件
+     */
+    private static final class Overflow {
+        final int kind;
+        final int value;
+        final long move;
+        final long submittedNanos;
+
+        Overflow(int kind, int value, long move, long submittedNanos) {
+            this.kind = kind;
+            this.value = value;
+            this.move = move;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+
+    private static final int SPIN_TRIES = 100;
+
+    private final Slot[] ring;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final Handler handler;
+
+    // 生产者已抢占的最大序号
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // 注入线程已消费的最大序号
+    private volatile long consumed = -1;
+    private final Queue<Overflow> overflow = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger overflowSize = new AtomicInteger();
+    // 进入过溢出队列的事件数量
+    private final LongAdder overflowed = new LongAdder();
+    private volatile boolean consumerWaiting = false;
+    private volatile boolean running = true;
+    // 注入线程，调用 start() 后才创建
+    private volatile Thread consumerThread;
+
+    public InjectionPipeline(int capacity, WaitStrategy waitStrategy, Handler handler) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity必须是2的幂: " + capacity);
+        }
+        this.ring = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+        this.handler = handler;
+    }
+
+    /**
+     * 启动注入线程，由持有者在自身构造完成后调用；启动前提交的事件在启动后依次注入
+     */
+    public synchronized void start() {
+        if (consumerThread != null) {
+            return;
+        }
+        Thread thread = new Thread(this::consumeLoop, "Input-Injector");
+        thread.setDaemon(true);
+        consumerThread = thread;
+        thread.start();
+        logger.info("注入流水线已启动，容量: {}，等待策略: {}", ring.length, waitStrategy);
+    }
+
+    /**
+     * 提交事件，可在任意线程调用且不会阻塞；缓冲区满时放入溢出队列
+     */
+    public void publish(int kind, int value, long move) {
+        if (!running) {
+            return;
+        }
+        // 溢出队列未清空时继续排在其后，保证顺序
+        if (overflowSize.get() > 0 || !tryPublish(kind, value, move)) {
+            overflowSize.incrementAndGet();
+            overflowed.increment();
+            overflow.offer(new Overflow(kind, value, move, System.nanoTime()));
+        }
+        if (consumerWaiting) {
+            LockSupport.unpark(consumerThread);
+        }
+    }
+
+    /**
+     * 抢占一个空闲槽位并发布，缓冲区满时返回false
+     */
+    private boolean tryPublish(int kind, int value, long move) {
+        long current;
+        do {
+            current = claimed.get();
+            if (current + 1 - ring.length > consumed) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(current, current + 1));
+        long sequence = current + 1;
+        Slot slot = ring[(int) (sequence & mask)];
+        slot.kind = kind;
+        slot.value = value;
+        slot.move = move;
+        slot.submittedNanos = System.nanoTime();
+        slot.sequence = sequence;
+        return true;
+    }
+
+    private void consumeLoop() {
+        long next = consumed + 1;
+        int idle = 0;
+        while (running) {
+            Slot slot = ring[(int) (next & mask)];
+            if (slot.sequence == next) {
+                idle = 0;
+                dispatch(slot.kind, slot.value, slot.move, slot.submittedNanos);
+                consumed = next++;
+                continue;
+            }
+            // 缓冲区已全部处理（没有已抢占但未发布的槽位）后才处理溢出队列
+            if (claimed.get() < next) {
+                Overflow event = overflow.poll();
+                if (event != null) {
+                    idle = 0;
+                    dispatch(event.kind, event.value, event.move, event.submittedNanos);
+                    overflowSize.decrementAndGet();
+                    continue;
+                }
+            }
+            idle = waitFor(slot, next, idle);
+        }
+        logger.info("注入流水线已停止");
+    }
+
+    private void dispatch(int kind, int value, long move, long submittedNanos) {
+        try {
+            handler.onEvent(kind, value, move, submittedNanos);
+        } catch (Throwable e) {
+            logger.error("注入事件失败: {}", e.getMessage(), e);
+        }
+    }
+
+    private int waitFor(Slot slot, long next, int idle) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                Thread.onSpinWait();
+                return idle;
+            case YIELDING:
+                if (idle < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                    return idle + 1;
+                }
+                Thread.yield();
+                return idle;
+            default:
+                if (idle < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                    return idle + 1;
+                }
+                consumerWaiting = true;
+                // 先声明等待再复查，避免与生产者的发布错过唤醒
+                if (slot.sequence != next && overflow.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                consumerWaiting = false;
+                return idle;
+        }
+    }
+
+    /**
+     * 获取尚未注入的事件数量
+     */
+    public long getBacklog() {
+        return Math.max(0, claimed.get() - consumed) + overflowSize.get();
+    }
+
+    /**
+     * 获取因缓冲区满而进入溢出队列的事件数量
+     */
+    public long getOverflowCount() {
+        return overflowed.sum();
+    }
+
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(consumerThread);
+    }
+}
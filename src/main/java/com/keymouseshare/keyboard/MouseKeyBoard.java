@@ -10,11 +10,36 @@ public interface MouseKeyBoard {
 
     void mouseWheel(int wheelAmount);
 
+    /**
+     * 在指定位置按下鼠标按钮，与之前的移动按顺序注入，不使用当前光标位置
+     */
+    void mousePressAt(int button, int x, int y);
+
+    /**
+     * 在指定位置释放鼠标按钮
+     */
+    void mouseReleaseAt(int button, int x, int y);
+
+    /**
+     * 在指定位置滚动滚轮
+     */
+    void mouseWheelAt(int wheelAmount, int x, int y);
+
 
     void keyPress(int keyCode);
 
     void keyRelease(int keyCode);
 
+    /**
+     * 释放所有由本端注入后尚未释放的按键和鼠标按钮
+     */
+    void releaseAll();
+
+    /**
+     * 尚未注入的事件数量，调用方据此暂停读取远程事件
+     */
+    long getInjectionBacklog();
+
 
 
     void initVirtualMouseLocation();
@@ -23,11 +48,30 @@ public interface MouseKeyBoard {
 
     void stopMouseKeyController();
 
+    /**
+     * 虚拟桌面鼠标位置已更新，用于触发一次边缘检测
+     */
+    void onMouseLocationChanged();
+
     boolean isEdgeMode();
 
     void stopEdgeDetection();
 
     boolean isChangingScreen();
+
+    /**
+     * 隐藏光标的遮罩已显示（完成布局后的第一个脉冲）或已隐藏，在JavaFX线程中调用，用于在遮罩生效后定位光标
+     *
+     * @param shown 遮罩是否已显示
+     */
+    void onEdgeOverlayChanged(boolean shown);
+
+    /**
+     * 远程设备失联，鼠标位于该设备时交还本机控制
+     *
+     * @param deviceIp 失联设备IP
+     */
+    void onRemoteDeviceLost(String deviceIp);
     
 
 
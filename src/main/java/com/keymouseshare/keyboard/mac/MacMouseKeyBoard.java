@@ -3,17 +3,16 @@ package com.keymouseshare.keyboard.mac;
 import com.keymouseshare.bean.MoveTargetScreenInfo;
 import com.keymouseshare.bean.ScreenInfo;
 import com.keymouseshare.keyboard.BaseMouseKeyBoard;
+import com.keymouseshare.keyboard.EdgeWatcher;
 import com.keymouseshare.keyboard.MouseKeyBoard;
 import com.keymouseshare.storage.DeviceStorage;
 import com.keymouseshare.storage.VirtualDesktopStorage;
+import com.keymouseshare.util.AppRuntime;
 import com.keymouseshare.util.MouseEdgeDetector;
 import com.sun.jna.Platform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 
 public class MacMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBoard {
@@ -28,7 +27,8 @@ public class MacMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBoard
 
     private final DeviceStorage deviceStorage = DeviceStorage.getInstance();
     private final VirtualDesktopStorage virtualDesktopStorage = VirtualDesktopStorage.getInstance();
-    private ScheduledExecutorService edgeWatcherExecutor;
+    // 虚拟鼠标位置变化时才执行边缘检测，首次启动时创建
+    private volatile EdgeWatcher edgeWatcher;
 
 
     private static volatile boolean edgeMode = false;
@@ -42,8 +42,6 @@ public class MacMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBoard
         if (virtualDesktopStorage.getActiveScreen() == null) {
             return;
         }
-        int x = virtualDesktopStorage.getMouseLocation()[0];
-        int y = virtualDesktopStorage.getMouseLocation()[1];
         MoveTargetScreenInfo moveTargetScreenInfo = MouseEdgeDetector.isAtScreenEdge();
         if (moveTargetScreenInfo != null) {
 
@@ -56,11 +54,14 @@ public class MacMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBoard
                 if (screenInfo.getDeviceIp().equals(deviceStorage.getSeverDevice().getIpAddress())) {
                     System.out.println("当前设备是控制器，需要退出鼠标隐藏");
                     exitEdgeMode();
+                    // 此前提交的事件注入完成后才记录切换完成
+                    markTransition();
 
                 } else {
                     if (!edgeMode) {
                         System.out.println("当前设备是控制器，需要隐藏鼠标");
                         enterEdgeMode();
+                        markTransition();
 
                     }
                 }
@@ -73,16 +74,24 @@ public class MacMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBoard
     }
 
     @Override
-    public void startMouseKeyController() {
+    public synchronized void startMouseKeyController() {
         if (!Platform.isMac()) {
             return; // 仅在macOS上实现
         }
 
-        // 启动边缘监视线程
-        if(edgeWatcherExecutor == null || edgeWatcherExecutor.isTerminated()) {
-            edgeWatcherExecutor = Executors.newScheduledThreadPool(1);
+        // 启动边缘检测
+        if (edgeWatcher == null) {
+            edgeWatcher = new EdgeWatcher("Edge-Watcher", this::virtualScreenEdgeCheck);
+        }
+        edgeWatcher.start();
+    }
+
+    @Override
+    public void onMouseLocationChanged() {
+        EdgeWatcher watcher = edgeWatcher;
+        if (watcher != null) {
+            watcher.onLocationChanged();
         }
-        edgeWatcherExecutor.scheduleAtFixedRate(this::virtualScreenEdgeCheck, 0, 5, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -105,6 +114,11 @@ public class MacMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBoard
         // 这里可以添加具体的实现
     }
 
+    @Override
+    public void onEdgeOverlayChanged(boolean shown) {
+        // macOS不显示遮罩
+    }
+
     @Override
     public boolean isEdgeMode() {
         return edgeMode;
@@ -112,8 +126,9 @@ public class MacMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBoard
 
     @Override
     public void stopEdgeDetection() {
-        if (edgeWatcherExecutor != null) {
-            edgeWatcherExecutor.shutdown();
+        EdgeWatcher watcher = edgeWatcher;
+        if (watcher != null) {
+            watcher.stop();
         }
     }
 
@@ -142,4 +157,17 @@ public class MacMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBoard
     public boolean isChangingScreen() {
         return true;
     }
+
+    @Override
+    public void onRemoteDeviceLost(String deviceIp) {
+        // 与边缘检测在同一个定时线程中执行
+        AppRuntime.getInstance().timer().execute(() -> {
+            ScreenInfo activeScreen = virtualDesktopStorage.getActiveScreen();
+            if (activeScreen == null || !deviceIp.equals(activeScreen.getDeviceIp())) {
+                return;
+            }
+            logger.warn("远程设备 {} 失联，交还本机控制", deviceIp);
+            exitEdgeMode();
+        });
+    }
 }
\ No newline at end of file
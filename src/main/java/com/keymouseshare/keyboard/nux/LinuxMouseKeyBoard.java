@@ -34,6 +34,11 @@ public class LinuxMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBoa
 
     }
 
+    @Override
+    public void onMouseLocationChanged() {
+
+    }
+
     @Override
     public void stopEdgeDetection() {
 
@@ -48,4 +53,14 @@ public class LinuxMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBoa
     public boolean isChangingScreen() {
         return true;
     }
+
+    @Override
+    public void onEdgeOverlayChanged(boolean shown) {
+
+    }
+
+    @Override
+    public void onRemoteDeviceLost(String deviceIp) {
+
+    }
 }
@@ -3,9 +3,11 @@ package com.keymouseshare.keyboard.win;
 import com.keymouseshare.bean.MoveTargetScreenInfo;
 import com.keymouseshare.bean.ScreenInfo;
 import com.keymouseshare.keyboard.BaseMouseKeyBoard;
+import com.keymouseshare.keyboard.EdgeWatcher;
 import com.keymouseshare.keyboard.MouseKeyBoard;
 import com.keymouseshare.storage.DeviceStorage;
 import com.keymouseshare.storage.VirtualDesktopStorage;
+import com.keymouseshare.util.AppRuntime;
 import com.keymouseshare.util.MouseEdgeDetector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,16 +24,14 @@ public class WindowMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBo
 
     private static final WindowMouseKeyBoard INSTANCE = new WindowMouseKeyBoard();
 
-    // 创建调度执行器服务，使用单线程即可
-    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-
     public static WindowMouseKeyBoard getInstance() {
         return INSTANCE;
     }
 
     private final DeviceStorage deviceStorage = DeviceStorage.getInstance();
     private final VirtualDesktopStorage virtualDesktopStorage = VirtualDesktopStorage.getInstance();
-    private ScheduledExecutorService edgeWatcherExecutor;
+    // 虚拟鼠标位置变化时才执行边缘检测，首次启动时创建
+    private volatile EdgeWatcher edgeWatcher;
 
     private AtomicBoolean changingScreen = new AtomicBoolean(false);
 
@@ -39,6 +39,9 @@ public class WindowMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBo
 
     private static volatile boolean edgeMode = false;
 
+    // 屏幕切换后等待遮罩显示或隐藏完成再定位光标，每次切换只定位一次
+    private final AtomicBoolean warpPending = new AtomicBoolean(false);
+
     public WindowMouseKeyBoard() {
         super();
         hookManager = new WinHookManager();
@@ -85,12 +88,19 @@ public class WindowMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBo
     }
 
     @Override
-    public void startMouseKeyController() {
-        if (!(edgeWatcherExecutor == null || edgeWatcherExecutor.isTerminated())) {
-            edgeWatcherExecutor.shutdown();
+    public synchronized void startMouseKeyController() {
+        if (edgeWatcher == null) {
+            edgeWatcher = new EdgeWatcher("Edge-Watcher", this::virtualScreenEdgeCheck);
+        }
+        edgeWatcher.start();
+    }
+
+    @Override
+    public void onMouseLocationChanged() {
+        EdgeWatcher watcher = edgeWatcher;
+        if (watcher != null) {
+            watcher.onLocationChanged();
         }
-        edgeWatcherExecutor = Executors.newScheduledThreadPool(1);
-        edgeWatcherExecutor.scheduleAtFixedRate(this::virtualScreenEdgeCheck, 0, 5, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -122,6 +132,8 @@ public class WindowMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBo
         edgeMode = true;
         changingScreen.set( true);
         try{
+            // 遮罩显示是异步的，显示完成后由 onEdgeOverlayChanged 定位光标，注入后记录切换完成
+            warpPending.set(true);
             virtualDesktopStorage.enterEdgeMode();
             logger.debug("[enterEdgeMode direction={}:({},{})]", direction, virtualDesktopStorage.getMouseLocation()[0], virtualDesktopStorage.getMouseLocation()[1]);
             if (direction.equals("LEFT")) {
@@ -137,16 +149,6 @@ public class WindowMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBo
                 virtualDesktopStorage.moveMouseLocation(0, +10);
                 logger.debug("[virtualDesktopMousePosition-BOTTOM]:({},{})", virtualDesktopStorage.getMouseLocation()[0], virtualDesktopStorage.getMouseLocation()[1]);
             }
-            for (int i = 0; i < 3; i++) {
-                try {
-                    Thread.sleep(50);
-                    logger.debug("[serverMousePosition x,vx,tx,y,vy,ty]:({},{},{},{},{},{})", virtualDesktopStorage.getMouseLocation()[0], virtualDesktopStorage.getActiveScreen().getVx(), virtualDesktopStorage.getMouseLocationTransform()[0],virtualDesktopStorage.getMouseLocation()[1] , virtualDesktopStorage.getActiveScreen().getVy(), virtualDesktopStorage.getMouseLocationTransform()[1]);
-                    logger.debug("[serverMousePosition]:({},{})", (int) ((virtualDesktopStorage.getMouseLocation()[0] - virtualDesktopStorage.getActiveScreen().getVx()) / virtualDesktopStorage.getMouseLocationTransform()[0]), (int) ((virtualDesktopStorage.getMouseLocation()[1] - virtualDesktopStorage.getActiveScreen().getVy()) / virtualDesktopStorage.getMouseLocationTransform()[1]));
-                    mouseMove((int) ((virtualDesktopStorage.getMouseLocation()[0] - virtualDesktopStorage.getActiveScreen().getVx()) / virtualDesktopStorage.getMouseLocationTransform()[0]), (int) ((virtualDesktopStorage.getMouseLocation()[1] - virtualDesktopStorage.getActiveScreen().getVy()) / virtualDesktopStorage.getMouseLocationTransform()[1]));
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
         }finally {
             changingScreen.set(false);
         }
@@ -167,16 +169,8 @@ public class WindowMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBo
                 virtualDesktopStorage.moveMouseLocation(0, +10);
             }
 
-            logger.debug("控制中心鼠标位置：{},{}", virtualDesktopStorage.getMouseLocation()[0] - virtualDesktopStorage.getActiveScreen().getVx(), virtualDesktopStorage.getMouseLocation()[1] - virtualDesktopStorage.getActiveScreen().getVy());
-            for (int i = 0; i < 3; i++) {
-                try {
-                    Thread.sleep(50);
-                    logger.debug("[LocalMousePosition]:({},{})", virtualDesktopStorage.getMouseLocation()[0] - virtualDesktopStorage.getActiveScreen().getVx(), virtualDesktopStorage.getMouseLocation()[1] - virtualDesktopStorage.getActiveScreen().getVy());
-                    mouseMove(virtualDesktopStorage.getMouseLocation()[0] - virtualDesktopStorage.getActiveScreen().getVx(), virtualDesktopStorage.getMouseLocation()[1] - virtualDesktopStorage.getActiveScreen().getVy());
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+            // 遮罩隐藏后由 onEdgeOverlayChanged 定位光标，注入后记录切换完成
+            warpPending.set(true);
 
             edgeMode = false;
             virtualDesktopStorage.exitEdgeMode();
@@ -185,6 +179,46 @@ public class WindowMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBo
         }
     }
 
+    /**
+     * 遮罩已完成显示或隐藏，系统不会再按遮罩窗口重新放置光标，按当前虚拟鼠标位置定位一次。
+     * 遮罩状态与当前模式不一致说明期间又切换了屏幕，由之后的回调负责定位
+     */
+    @Override
+    public void onEdgeOverlayChanged(boolean shown) {
+        if (shown != edgeMode || virtualDesktopStorage.getActiveScreen() == null || !warpPending.compareAndSet(true, false)) {
+            return;
+        }
+        long target = localTarget(shown);
+        logger.debug("遮罩{}后定位光标：{},{}", shown ? "显示" : "隐藏", unpackX(target), unpackY(target));
+        warpForTransition(unpackX(target), unpackY(target));
+    }
+
+    /**
+     * 虚拟鼠标位置对应的本机光标位置，高32位为x、低32位为y
+     *
+     * @param remote 激活屏幕是否为远程屏幕，是则按本机与远程屏幕的比例换算
+     */
+    private long localTarget(boolean remote) {
+        long location = virtualDesktopStorage.getMouseLocationSnapshot();
+        ScreenInfo activeScreen = virtualDesktopStorage.getActiveScreen();
+        int x = VirtualDesktopStorage.locationX(location) - activeScreen.getVx();
+        int y = VirtualDesktopStorage.locationY(location) - activeScreen.getVy();
+        if (remote) {
+            double[] transform = virtualDesktopStorage.getMouseLocationTransform();
+            x = (int) (x / transform[0]);
+            y = (int) (y / transform[1]);
+        }
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static int unpackX(long position) {
+        return (int) (position >> 32);
+    }
+
+    private static int unpackY(long position) {
+        return (int) position;
+    }
+
     @Override
     public boolean isEdgeMode() {
         return edgeMode;
@@ -192,8 +226,9 @@ public class WindowMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBo
 
     @Override
     public void stopEdgeDetection() {
-        if (edgeWatcherExecutor != null) {
-            edgeWatcherExecutor.shutdown();
+        EdgeWatcher watcher = edgeWatcher;
+        if (watcher != null) {
+            watcher.stop();
         }
     }
 
@@ -224,4 +259,21 @@ public class WindowMouseKeyBoard extends BaseMouseKeyBoard implements MouseKeyBo
     public boolean isChangingScreen() {
         return changingScreen.get();
     }
+
+    @Override
+    public void onRemoteDeviceLost(String deviceIp) {
+        // 与边缘检测在同一个定时线程中执行，避免与屏幕切换交错
+        AppRuntime.getInstance().timer().execute(() -> {
+            ScreenInfo activeScreen = virtualDesktopStorage.getActiveScreen();
+            if (activeScreen == null || !deviceIp.equals(activeScreen.getDeviceIp())) {
+                return;
+            }
+            logger.warn("远程设备 {} 失联，交还本机控制", deviceIp);
+            stopInputInterception();
+            edgeMode = false;
+            virtualDesktopStorage.exitEdgeMode();
+            // 按本机真实光标位置重新定位激活屏幕和虚拟鼠标
+            initVirtualMouseLocation();
+        });
+    }
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package com.keymouseshare.listener;
+
+/**
+ * 本机网络地址变化监听
+ */
+public interface NetworkAddressListener {
+    /**
+     * 本机IP或广播地址发生变化，在共享定时线程中调用，实现应尽快返回
+     *
+     * @param oldIpAddress     原IP地址
+     * @param newIpAddress     新IP地址
+     * @param broadcastAddress 新广播地址
+     */
+    void onLocalAddressChanged(String oldIpAddress, String newIpAddress, String broadcastAddress);
+}
@@ -5,10 +5,9 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 
+import com.keymouseshare.util.AppRuntime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,17 +17,16 @@ import org.slf4j.LoggerFactory;
 public class ControlClient {
     private static final Logger logger = LoggerFactory.getLogger(ControlClient.class);
     
-    private EventLoopGroup group;
     private Channel channel;
     
     public void connect(String host, int port) throws Exception {
         logger.debug("正在初始化ControlClient...");
-        group = new NioEventLoopGroup();
-        logger.debug("ControlClient EventLoopGroup已创建");
-        
+        // 使用应用共享的EventLoopGroup，重连时不再创建新的线程组
+        EventLoopGroup group = AppRuntime.getInstance().ioGroup();
+
         Bootstrap bootstrap = new Bootstrap()
             .group(group)
-            .channel(NioSocketChannel.class)
+            .channel(TransportSelector.socketChannelClass())
             .handler(new ChannelInitializer<SocketChannel>() {
                 @Override
                 protected void initChannel(SocketChannel ch) {
@@ -41,6 +39,8 @@ public class ControlClient {
                 }
             });
         
+        TransportSelector.configure(bootstrap);
+
         logger.info("正在连接到服务器 {}:{}", host, port);
         channel = bootstrap.connect(host, port).sync().channel();
         logger.info("ControlClient已成功连接到服务器 {}:{}", host, port);
@@ -62,10 +62,6 @@ public class ControlClient {
             channel.close();
             logger.debug("Channel已关闭");
         }
-        if (group != null) {
-            group.shutdownGracefully();
-            logger.debug("EventLoopGroup已关闭");
-        }
         logger.info("ControlClient连接已完全断开");
     }
 }
\ No newline at end of file
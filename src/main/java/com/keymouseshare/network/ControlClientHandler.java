@@ -2,26 +2,66 @@ package com.keymouseshare.network;
 
 import com.github.kwhat.jnativehook.mouse.NativeMouseEvent;
 import com.keymouseshare.bean.ControlEvent;
+import com.keymouseshare.bean.ControlEventType;
 import com.keymouseshare.keyboard.MouseKeyBoard;
 import com.keymouseshare.keyboard.MouseKeyBoardFactory;
 import com.keymouseshare.util.NativeToAwtKeyEventMapper;
 import com.keymouseshare.util.NativeToAwtMouseEventMapper;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 
 /**
  * 控制客户端处理器
  */
 public class ControlClientHandler extends SimpleChannelInboundHandler<ControlEvent> {
     private static final Logger logger = LoggerFactory.getLogger(ControlClientHandler.class);
+    // 运动通道丢包率上报周期(毫秒)
+    private static final long MOTION_REPORT_INTERVAL = 1000;
+    // 注入积压超过高水位时暂停读取控制连接，降到低水位以下再恢复
+    private static final long INJECT_BACKLOG_HIGH = 512;
+    private static final long INJECT_BACKLOG_LOW = 128;
+    // 暂停读取期间检查积压的间隔(毫秒)
+    private static final long INJECT_BACKLOG_CHECK_INTERVAL = 5;
     private final MouseKeyBoard mouseKeyBoard = MouseKeyBoardFactory.getFactory();
+    // 握手协商了ping能力后才有，只在连接所属的EventLoop中访问
+    private ControlKeepAlive keepAlive;
+    // 握手协商了udpmotion能力后才有
+    private volatile MotionChannel.Receiver motionReceiver;
+    private ScheduledFuture<?> motionReportTask;
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) {
         logger.info("控制客户端连接已激活");
+        // 声明本端支持的能力，服务端确认后再切换编码
+        ctx.writeAndFlush(ControlHandshake.request(ControlHandshake.localFeatures()));
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (keepAlive != null) {
+            keepAlive.stop();
+            keepAlive = null;
+        }
+        if (motionReportTask != null) {
+            motionReportTask.cancel(false);
+            motionReportTask = null;
+        }
+        if (motionReceiver != null) {
+            motionReceiver.close();
+            motionReceiver = null;
+        }
+        // 断开前未收到的释放事件不会再来
+        mouseKeyBoard.releaseAll();
+        logger.info("控制客户端连接已断开");
     }
 
     @Override
@@ -31,24 +71,49 @@ public class ControlClientHandler extends SimpleChannelInboundHandler<ControlEve
         // 根据事件类型调用相应的MouseKeyBoard方法
         switch (event.getType()) {
 
+            case "Handshake":
+                handleHandshake(ctx, event);
+                break;
+
+            case "Ping":
+                if (keepAlive != null) {
+                    keepAlive.onHeartbeat();
+                }
+                ctx.writeAndFlush(ControlKeepAlive.pong(event), ctx.voidPromise());
+                break;
+
             case "MousePressed":
                 logger.debug("鼠标按下:info 鼠标按下按钮={}, 位置=({}, {})", event.getButton(), event.getX(), event.getY());
-                mouseKeyBoard.mousePress(NativeToAwtMouseEventMapper.toInputEventButton(event.getButton()), event.getX(), event.getY());
+                if (!injectAtMotionSeq(event, () -> mouseKeyBoard.mousePressAt(
+                        NativeToAwtMouseEventMapper.toInputEventButton(event.getButton()), event.getX(), event.getY()))) {
+                    mouseKeyBoard.mousePress(NativeToAwtMouseEventMapper.toInputEventButton(event.getButton()), event.getX(), event.getY());
+                }
                 break;
 
             case "MouseReleased":
                 logger.debug("鼠标释放: 按钮={}, 位置=({}, {})", event.getButton(), event.getX(), event.getY());
-                mouseKeyBoard.mouseRelease(NativeToAwtMouseEventMapper.toInputEventButton(event.getButton()),event.getX(),event.getY());
+                if (!injectAtMotionSeq(event, () -> mouseKeyBoard.mouseReleaseAt(
+                        NativeToAwtMouseEventMapper.toInputEventButton(event.getButton()), event.getX(), event.getY()))) {
+                    mouseKeyBoard.mouseRelease(NativeToAwtMouseEventMapper.toInputEventButton(event.getButton()),event.getX(),event.getY());
+                }
                 break;
 
             case "MouseMoved":
                 logger.debug("鼠标移动到: {}, {}", event.getX(), event.getY());
-                mouseKeyBoard.mouseMove(event.getX(), event.getY());
+                MotionChannel.Receiver receiver = motionReceiver;
+                if (event.getSeq() == 0 || receiver == null) {
+                    mouseKeyBoard.mouseMove(event.getX(), event.getY());
+                } else {
+                    // 已有更新的UDP位置时跳过旧位置
+                    receiver.moveTo(event.getSeq(), event.getX(), event.getY());
+                }
                 break;
 
             case "MouseWheel":
                 logger.debug("鼠标滚轮: 旋转={}, 位置=({}, {})", event.getButton(), event.getX(), event.getY());
-                mouseKeyBoard.mouseWheel(event.getButton()); // button字段存储滚轮旋转值
+                if (!injectAtMotionSeq(event, () -> mouseKeyBoard.mouseWheelAt(event.getButton(), event.getX(), event.getY()))) {
+                    mouseKeyBoard.mouseWheel(event.getButton()); // button字段存储滚轮旋转值
+                }
                 break;
 
             case "KeyPressed":
@@ -61,6 +126,11 @@ public class ControlClientHandler extends SimpleChannelInboundHandler<ControlEve
                 mouseKeyBoard.keyRelease(NativeToAwtKeyEventMapper.toAwtKeyCode(event.getKeyCode()));
                 break;
 
+            case "ReleaseAll":
+                logger.info("服务端已重置控制会话，释放所有按键");
+                mouseKeyBoard.releaseAll();
+                break;
+
             default:
                 logger.error("未知的控制事件类型: {}", event.getType());
                 break;
@@ -68,6 +138,120 @@ public class ControlClientHandler extends SimpleChannelInboundHandler<ControlEve
         logger.debug("控制事件处理完成: {}", event.getType());
     }
 
+    /**
+     * 离散鼠标事件带运动序号时在事件自身坐标上注入，返回是否已注入
+     * 带序号时坐标为目标屏幕内的位置，事件可能晚于之后的UDP位置到达，因此在自身坐标上注入，
+     * 并推进已应用的序号，使更早的迟到数据报被丢弃；旧版本服务端不带序号，坐标不可用
+     */
+    private boolean injectAtMotionSeq(ControlEvent event, Runnable inject) {
+        if (event.getSeq() == 0) {
+            return false;
+        }
+        MotionChannel.Receiver receiver = motionReceiver;
+        if (receiver != null) {
+            receiver.runAt(event.getSeq(), inject);
+        } else {
+            inject.run();
+        }
+        return true;
+    }
+
+    /**
+     * 处理服务端的握手确认
+     */
+    private void handleHandshake(ChannelHandlerContext ctx, ControlEvent event) {
+        if (!ControlHandshake.isAck(event)) {
+            // 旧版本服务端会把握手请求原样回传，忽略即可
+            logger.debug("服务端不支持握手协商，继续使用JSON编码");
+            return;
+        }
+        Set<String> accepted = ControlHandshake.features(event);
+        logger.info("控制连接握手完成，协商能力: {}", accepted);
+        if (accepted.contains(ControlHandshake.FEATURE_BINARY)) {
+            ctx.pipeline().get(ControlMessageEncoder.class).setWireFormat(WireFormat.BINARY);
+        }
+        if (accepted.contains(ControlHandshake.FEATURE_PING)) {
+            keepAlive = new ControlKeepAlive(ctx, "服务端", false);
+            keepAlive.start();
+        }
+        if (accepted.contains(ControlHandshake.FEATURE_UDP_MOTION)) {
+            openMotionReceiver(ctx);
+        }
+    }
+
+    /**
+     * 绑定UDP运动端口并告知服务端
+     */
+    private void openMotionReceiver(ChannelHandlerContext ctx) {
+        InetSocketAddress server = (InetSocketAddress) ctx.channel().remoteAddress();
+        MotionChannel.Receiver receiver = new MotionChannel.Receiver(server.getAddress());
+        receiver.bind().addListener((ChannelFuture future) -> {
+            if (!future.isSuccess()) {
+                logger.warn("无法绑定运动通道，鼠标移动继续走TCP: {}", future.cause().getMessage());
+                return;
+            }
+            if (!ctx.channel().isActive()) {
+                receiver.close();
+                return;
+            }
+            motionReceiver = receiver;
+            ControlEvent motion = new ControlEvent();
+            motion.setType(ControlEventType.MotionChannel.name());
+            motion.setX(receiver.getPort());
+            motion.setY(MotionChannel.localRedundancyPreference());
+            ctx.writeAndFlush(motion);
+            motionReportTask = ctx.executor().scheduleAtFixedRate(() -> reportMotionLoss(ctx, receiver),
+                    MOTION_REPORT_INTERVAL, MOTION_REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+            logger.info("运动通道已绑定端口 {}", receiver.getPort());
+        });
+    }
+
+    /**
+     * 上报上一周期的丢包率，服务端据此调整冗余位置个数；周期内没有移动时不上报
+     */
+    private void reportMotionLoss(ChannelHandlerContext ctx, MotionChannel.Receiver receiver) {
+        int lossPermille = receiver.takeLossPermille();
+        if (lossPermille < 0 || !ctx.channel().isActive()) {
+            return;
+        }
+        ControlEvent report = new ControlEvent();
+        report.setType(ControlEventType.MotionReport.name());
+        report.setX(lossPermille);
+        ctx.writeAndFlush(report, ctx.voidPromise());
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        // 注入线程卡住时不在IO线程上等待，改为停止读取，让积压留在对端与TCP窗口中
+        if (ctx.channel().config().isAutoRead() && mouseKeyBoard.getInjectionBacklog() >= INJECT_BACKLOG_HIGH) {
+            ctx.channel().config().setAutoRead(false);
+            if (keepAlive != null) {
+                keepAlive.setReadPaused(true);
+            }
+            logger.warn("注入积压 {} 个事件，暂停读取控制连接", mouseKeyBoard.getInjectionBacklog());
+            scheduleBacklogCheck(ctx);
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    private void scheduleBacklogCheck(ChannelHandlerContext ctx) {
+        ctx.executor().schedule(() -> {
+            if (!ctx.channel().isActive()) {
+                return;
+            }
+            if (mouseKeyBoard.getInjectionBacklog() > INJECT_BACKLOG_LOW) {
+                scheduleBacklogCheck(ctx);
+                return;
+            }
+            logger.info("注入积压已回落，恢复读取控制连接");
+            if (keepAlive != null) {
+                keepAlive.setReadPaused(false);
+                keepAlive.onHeartbeat();
+            }
+            ctx.channel().config().setAutoRead(true);
+        }, INJECT_BACKLOG_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         logger.error("控制客户端发生异常: {}", cause.getMessage(), cause);
@@ -0,0 +1,273 @@
+package com.keymouseshare.network;
+
+import com.keymouseshare.bean.ControlEvent;
+import com.keymouseshare.bean.ControlEventType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 控制事件二进制编解码
+ * <p>
+ * 帧内数据布局（不含外层4字节长度）：
+ * <pre>
+ * [类型标识 1字节][字段标志 1字节][x,y zig-zag varint][button][keyCode][IPv4 4字节|deviceIp][screenName][data]
+ * </pre>
+ * 可选字段仅在对应标志位置位时出现，字符串为 varint长度 + UTF-8字节。
+ * 类型标识取值远小于JSON起始字符'{'，解码端据此区分两种编码。
+ */
+public final class ControlEventCodec {
+
+    private static final int FLAG_XY = 1;
+    private static final int FLAG_BUTTON = 1 << 1;
+    private static final int FLAG_KEY_CODE = 1 << 2;
+    private static final int FLAG_IPV4 = 1 << 3;
+    private static final int FLAG_DEVICE_IP = 1 << 4;
+    private static final int FLAG_SCREEN_NAME = 1 << 5;
+    private static final int FLAG_DATA = 1 << 6;
+    private static final int FLAG_SEQ = 1 << 7;
+
+    private static final byte JSON_START = '{';
+
+    private ControlEventCodec() {
+    }
+
+    /**
+     * 判断事件能否使用二进制编码（类型需在ControlEventType中定义）
+     */
+    public static boolean canEncode(ControlEvent event) {
+        return ControlEventType.fromName(event.getType()) != null;
+    }
+
+    /**
+     * 判断帧内数据是否为二进制编码
+     *
+     * @param firstByte 帧内数据的第一个字节
+     */
+    public static boolean isBinary(byte firstByte) {
+        return firstByte != JSON_START;
+    }
+
+    /**
+     * 将事件以二进制格式写入ByteBuf
+     */
+    public static void encode(ControlEvent event, ByteBuf out) {
+        ControlEventType type = ControlEventType.fromName(event.getType());
+        if (type == null) {
+            throw new IllegalArgumentException("无法二进制编码的事件类型: " + event.getType());
+        }
+
+        int flags = 0;
+        if (event.getX() != 0 || event.getY() != 0) {
+            flags |= FLAG_XY;
+        }
+        if (event.getButton() != 0) {
+            flags |= FLAG_BUTTON;
+        }
+        if (event.getKeyCode() != 0) {
+            flags |= FLAG_KEY_CODE;
+        }
+        long ipv4 = -1;
+        if (event.getDeviceIp() != null) {
+            ipv4 = parseIpv4(event.getDeviceIp());
+            flags |= ipv4 >= 0 ? FLAG_IPV4 : FLAG_DEVICE_IP;
+        }
+        if (event.getScreenName() != null) {
+            flags |= FLAG_SCREEN_NAME;
+        }
+        if (event.getData() != null) {
+            flags |= FLAG_DATA;
+        }
+        if (event.getSeq() != 0) {
+            flags |= FLAG_SEQ;
+        }
+
+        out.writeByte(type.getCode());
+        out.writeByte(flags);
+        if ((flags & FLAG_XY) != 0) {
+            writeVarInt(out, zigZag(event.getX()));
+            writeVarInt(out, zigZag(event.getY()));
+        }
+        if ((flags & FLAG_BUTTON) != 0) {
+            writeVarInt(out, zigZag(event.getButton()));
+        }
+        if ((flags & FLAG_KEY_CODE) != 0) {
+            writeVarInt(out, zigZag(event.getKeyCode()));
+        }
+        if ((flags & FLAG_IPV4) != 0) {
+            out.writeInt((int) ipv4);
+        }
+        if ((flags & FLAG_DEVICE_IP) != 0) {
+            writeString(out, event.getDeviceIp());
+        }
+        if ((flags & FLAG_SCREEN_NAME) != 0) {
+            writeString(out, event.getScreenName());
+        }
+        if ((flags & FLAG_DATA) != 0) {
+            writeString(out, event.getData());
+        }
+        if ((flags & FLAG_SEQ) != 0) {
+            writeVarInt(out, event.getSeq());
+        }
+    }
+
+    /**
+     * 直接写入一个完整的鼠标移动帧（含4字节长度），不经过ControlEvent对象
+     *
+     * @param out 输出缓冲区
+     * @param x   目标屏幕内的x坐标
+     * @param y   目标屏幕内的y坐标
+     */
+    public static void encodeMouseMove(ByteBuf out, int x, int y) {
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        out.writeByte(ControlEventType.MouseMoved.getCode());
+        if (x != 0 || y != 0) {
+            out.writeByte(FLAG_XY);
+            writeVarInt(out, zigZag(x));
+            writeVarInt(out, zigZag(y));
+        } else {
+            out.writeByte(0);
+        }
+        out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+    }
+
+    /**
+     * 从ByteBuf中读取一个二进制编码的事件，恰好消费length个字节
+     *
+     * @param in     输入缓冲区
+     * @param length 帧内数据长度
+     * @return 控制事件
+     */
+    public static ControlEvent decode(ByteBuf in, int length) {
+        int end = in.readerIndex() + length;
+        if (length < 2) {
+            throw new CorruptedFrameException("二进制控制帧过短: " + length);
+        }
+        ControlEventType type = ControlEventType.fromCode(in.readByte());
+        if (type == null) {
+            in.readerIndex(end);
+            throw new CorruptedFrameException("未知的控制事件类型标识");
+        }
+        int flags = in.readUnsignedByte();
+
+        ControlEvent event = new ControlEvent();
+        event.setType(type.name());
+        if ((flags & FLAG_XY) != 0) {
+            event.setX(unZigZag(readVarInt(in, end)));
+            event.setY(unZigZag(readVarInt(in, end)));
+        }
+        if ((flags & FLAG_BUTTON) != 0) {
+            event.setButton(unZigZag(readVarInt(in, end)));
+        }
+        if ((flags & FLAG_KEY_CODE) != 0) {
+            event.setKeyCode(unZigZag(readVarInt(in, end)));
+        }
+        if ((flags & FLAG_IPV4) != 0) {
+            ensureReadable(in, 4, end);
+            event.setDeviceIp(formatIpv4(in.readInt()));
+        }
+        if ((flags & FLAG_DEVICE_IP) != 0) {
+            event.setDeviceIp(readString(in, end));
+        }
+        if ((flags & FLAG_SCREEN_NAME) != 0) {
+            event.setScreenName(readString(in, end));
+        }
+        if ((flags & FLAG_DATA) != 0) {
+            event.setData(readString(in, end));
+        }
+        if ((flags & FLAG_SEQ) != 0) {
+            event.setSeq(readVarInt(in, end));
+        }
+        // 跳过新版本可能追加的未知字段
+        in.readerIndex(end);
+        return event;
+    }
+
+    public static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * 读取varint，不允许越过end位置
+     */
+    public static int readVarInt(ByteBuf in, int end) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            ensureReadable(in, 1, end);
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new CorruptedFrameException("varint过长");
+    }
+
+    private static void writeString(ByteBuf out, String value) {
+        writeVarInt(out, ByteBufUtil.utf8Bytes(value));
+        ByteBufUtil.writeUtf8(out, value);
+    }
+
+    private static String readString(ByteBuf in, int end) {
+        int length = readVarInt(in, end);
+        ensureReadable(in, length, end);
+        return in.readCharSequence(length, StandardCharsets.UTF_8).toString();
+    }
+
+    private static void ensureReadable(ByteBuf in, int length, int end) {
+        if (length < 0 || in.readerIndex() + length > end) {
+            throw new CorruptedFrameException("二进制控制帧字段越界");
+        }
+    }
+
+    /**
+     * 解析点分十进制IPv4地址
+     *
+     * @return 32位地址，非IPv4格式返回-1
+     */
+    private static long parseIpv4(String ip) {
+        long result = 0;
+        int part = -1;
+        int dots = 0;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c == '.') {
+                if (part < 0 || ++dots > 3) {
+                    return -1;
+                }
+                result = (result << 8) | part;
+                part = -1;
+            } else if (c >= '0' && c <= '9') {
+                part = (part < 0 ? 0 : part * 10) + (c - '0');
+                if (part > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        if (part < 0 || dots != 3) {
+            return -1;
+        }
+        return (result << 8) | part;
+    }
+
+    private static String formatIpv4(int ip) {
+        return ((ip >>> 24) & 0xFF) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+}
@@ -0,0 +1,102 @@
+package com.keymouseshare.network;
+
+import com.keymouseshare.bean.ControlEvent;
+import com.keymouseshare.bean.ControlEventType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 控制连接握手
+ * 客户端连接建立后发送 "features=..." 声明自身支持的能力，服务端回复 "accepted=..."。
+ * 旧版本服务端会把握手原样回传，旧版本客户端不会发送握手，双方都保持JSON编码。
+ */
+public final class ControlHandshake {
+
+    // 二进制编码能力
+    public static final String FEATURE_BINARY = "binary";
+    // Ping/Pong保活能力
+    public static final String FEATURE_PING = "ping";
+    // UDP运动通道能力
+    public static final String FEATURE_UDP_MOTION = "udpmotion";
+
+    // 运动通道选择：-Dkeymouseshare.motion=tcp 可强制鼠标移动走TCP
+    private static final String MOTION_PROPERTY = "keymouseshare.motion";
+
+    // 编码选择：-Dkeymouseshare.codec=json 可强制只使用JSON
+    private static final String CODEC_PROPERTY = "keymouseshare.codec";
+
+    private static final String REQUEST_PREFIX = "features=";
+    private static final String ACK_PREFIX = "accepted=";
+
+    private ControlHandshake() {
+    }
+
+    /**
+     * 本端支持的能力
+     */
+    public static Set<String> localFeatures() {
+        Set<String> features = new LinkedHashSet<>();
+        if (!"json".equalsIgnoreCase(System.getProperty(CODEC_PROPERTY))) {
+            features.add(FEATURE_BINARY);
+        }
+        features.add(FEATURE_PING);
+        if (!"tcp".equalsIgnoreCase(System.getProperty(MOTION_PROPERTY))) {
+            features.add(FEATURE_UDP_MOTION);
+        }
+        return features;
+    }
+
+    public static boolean isHandshake(ControlEvent event) {
+        return ControlEventType.Handshake.name().equals(event.getType());
+    }
+
+    public static ControlEvent request(Set<String> features) {
+        ControlEvent event = new ControlEvent();
+        event.setType(ControlEventType.Handshake.name());
+        event.setData(REQUEST_PREFIX + String.join(",", features));
+        return event;
+    }
+
+    public static ControlEvent ack(Set<String> features) {
+        ControlEvent event = new ControlEvent();
+        event.setType(ControlEventType.Handshake.name());
+        event.setData(ACK_PREFIX + String.join(",", features));
+        return event;
+    }
+
+    public static boolean isRequest(ControlEvent event) {
+        return isHandshake(event) && event.getData() != null && event.getData().startsWith(REQUEST_PREFIX);
+    }
+
+    public static boolean isAck(ControlEvent event) {
+        return isHandshake(event) && event.getData() != null && event.getData().startsWith(ACK_PREFIX);
+    }
+
+    /**
+     * 解析握手消息中的能力列表
+     */
+    public static Set<String> features(ControlEvent event) {
+        String data = event.getData();
+        if (data == null) {
+            return Collections.emptySet();
+        }
+        int index = data.indexOf('=');
+        String list = index >= 0 ? data.substring(index + 1) : data;
+        if (list.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new LinkedHashSet<>(Arrays.asList(list.split(",")));
+    }
+
+    /**
+     * 计算双方共同支持的能力
+     */
+    public static Set<String> negotiate(Set<String> remoteFeatures) {
+        Set<String> accepted = localFeatures();
+        accepted.retainAll(remoteFeatures);
+        return accepted;
+    }
+}
@@ -0,0 +1,211 @@
+package com.keymouseshare.network;
+
+import com.keymouseshare.bean.ControlEvent;
+import com.keymouseshare.bean.ControlEventType;
+import com.keymouseshare.util.PhiAccrualFailureDetector;
+import io.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 控制连接保活
+ * <p>
+ * 握手协商了ping能力后，服务端每隔 {@link #PING_INTERVAL} 毫秒发送Ping，客户端立即回复Pong。
+ * 两端都只用Ping/Pong的到达时间驱动 {@link PhiAccrualFailureDetector}，phi超过阈值即关闭连接，
+ * 对端进程退出或网络中断时约一秒内即可发现，不必等待写失败或TCP超时。
+ * 服务端同时用Ping到Pong的往返时间估计RTT，供 {@link MotionRateController} 判断链路是否拥塞：
+ * 每个Ping在seq字段中携带编号，客户端在Pong中原样带回，服务端按编号取对应Ping的发送时间，
+ * RTT超过Ping间隔、同时有多个Ping未应答时也不会低估。不带编号的Pong（客户端暂停读取时主动发送）只作为心跳。
+ */
+public final class ControlKeepAlive {
+    private static final Logger logger = LoggerFactory.getLogger(ControlKeepAlive.class);
+
+    // Ping间隔(毫秒)
+    static final long PING_INTERVAL = 200;
+    // 判定失联的phi阈值
+    private static final double PHI_THRESHOLD = 8.0;
+    // 可容忍的额外停顿(毫秒)，覆盖偶发的调度与GC延迟
+    private static final long ACCEPTABLE_PAUSE = 300;
+    private static final long MIN_STD_DEVIATION = 50;
+    private static final int MAX_SAMPLE_SIZE = 200;
+    // 记录发送时间的未应答Ping个数，覆盖 PING_WINDOW * PING_INTERVAL 以内的RTT
+    private static final int PING_WINDOW = 32;
+
+    // 不带编号的Pong不携带任何字段，可在多个连接间共享
+    static final ControlEvent PONG = event(ControlEventType.Pong);
+
+    private final ChannelHandlerContext ctx;
+    private final String peer;
+    private final boolean sendPing;
+    // 每次检查时调用，可为null
+    private final Runnable onTick;
+    private final PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(
+            PHI_THRESHOLD, MAX_SAMPLE_SIZE, MIN_STD_DEVIATION, ACCEPTABLE_PAUSE, PING_INTERVAL);
+    private ScheduledFuture<?> task;
+    // 客户端因注入积压暂停读取，只在EventLoop中访问
+    private boolean readPaused = false;
+
+    // 最近发出的Ping的编号与发送时间，按编号取模存放，只在EventLoop中访问
+    private final int[] pingIds = new int[PING_WINDOW];
+    private final long[] pingSentNanos = new long[PING_WINDOW];
+    private int lastPingId = 0;
+    // 平滑RTT与基线RTT，未测得时为0
+    private volatile long rttNanos = 0;
+    private volatile long baseRttNanos = 0;
+
+    /**
+     * @param ctx      连接的上下文
+     * @param peer     对端说明，用于日志
+     * @param sendPing 是否由本端发送Ping（服务端），否则只检查对端的Ping（客户端）
+     */
+    ControlKeepAlive(ChannelHandlerContext ctx, String peer, boolean sendPing) {
+        this(ctx, peer, sendPing, null);
+    }
+
+    /**
+     * @param onTick 每个Ping间隔在EventLoop中调用一次，不论连接上是否有其它流量
+     */
+    ControlKeepAlive(ChannelHandlerContext ctx, String peer, boolean sendPing, Runnable onTick) {
+        this.ctx = ctx;
+        this.peer = peer;
+        this.sendPing = sendPing;
+        this.onTick = onTick;
+    }
+
+    /**
+     * 开始保活，在连接所属的EventLoop中按Ping间隔检查一次
+     */
+    void start() {
+        detector.heartbeat();
+        task = ctx.executor().scheduleAtFixedRate(this::tick, PING_INTERVAL, PING_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * 收到对端的Ping，或恢复读取时视为收到心跳
+     */
+    void onHeartbeat() {
+        detector.heartbeat();
+    }
+
+    /**
+     * 收到对端的Pong，按其带回的编号计算RTT
+     *
+     * @param pingId Pong中带回的Ping编号，0表示不对应任何Ping
+     */
+    void onPong(int pingId) {
+        detector.heartbeat();
+        if (!sendPing || pingId == 0) {
+            return;
+        }
+        int slot = Math.floorMod(pingId, PING_WINDOW);
+        if (pingIds[slot] == pingId && pingSentNanos[slot] != 0) {
+            onRttSample(System.nanoTime() - pingSentNanos[slot]);
+            pingSentNanos[slot] = 0;
+        }
+    }
+
+    private void onRttSample(long sample) {
+        long rtt = rttNanos;
+        rttNanos = rtt == 0 ? sample : rtt + (sample - rtt) / 8;
+        long base = baseRttNanos;
+        // 基线取最小值，并缓慢跟随上升，适应路由变化
+        baseRttNanos = base == 0 || sample < base ? sample : base + (sample - base) / 64;
+    }
+
+    /**
+     * 平滑后的往返时间(纳秒)，只有发送Ping的一端才有，未测得时为0
+     */
+    long getRttNanos() {
+        return rttNanos;
+    }
+
+    /**
+     * 基线往返时间(纳秒)，未测得时为0
+     */
+    long getBaseRttNanos() {
+        return baseRttNanos;
+    }
+
+    /**
+     * 客户端暂停或恢复读取控制连接。暂停期间收不到Ping并非对端失联，
+     * 由本端按Ping间隔主动发送Pong并视为收到心跳，避免两端误判后断开连接
+     */
+    void setReadPaused(boolean readPaused) {
+        this.readPaused = readPaused;
+    }
+
+    /**
+     * 对端当前的可疑程度
+     */
+    double getSuspicion() {
+        return detector.phi();
+    }
+
+    private void tick() {
+        if (!ctx.channel().isActive()) {
+            stop();
+            return;
+        }
+        if (readPaused) {
+            detector.heartbeat();
+            ctx.writeAndFlush(PONG, ctx.voidPromise());
+            return;
+        }
+        double phi = detector.phi();
+        if (phi >= PHI_THRESHOLD) {
+            logger.warn("控制连接 {} 失联，phi={}，关闭连接", peer, String.format("%.1f", phi));
+            stop();
+            ctx.close();
+            return;
+        }
+        if (onTick != null) {
+            onTick.run();
+        }
+        if (sendPing) {
+            int pingId = MotionChannel.nextSeq(lastPingId);
+            lastPingId = pingId;
+            int slot = Math.floorMod(pingId, PING_WINDOW);
+            pingIds[slot] = pingId;
+            pingSentNanos[slot] = System.nanoTime();
+            ControlEvent ping = event(ControlEventType.Ping);
+            ping.setSeq(pingId);
+            ctx.writeAndFlush(ping, ctx.voidPromise());
+        }
+    }
+
+    /**
+     * 回复Ping的Pong，带回Ping的编号
+     */
+    static ControlEvent pong(ControlEvent ping) {
+        if (ping.getSeq() == 0) {
+            return PONG;
+        }
+        ControlEvent pong = event(ControlEventType.Pong);
+        pong.setSeq(ping.getSeq());
+        return pong;
+    }
+
+    static boolean isPing(ControlEvent event) {
+        return ControlEventType.Ping.name().equals(event.getType());
+    }
+
+    static boolean isPong(ControlEvent event) {
+        return ControlEventType.Pong.name().equals(event.getType());
+    }
+
+    private static ControlEvent event(ControlEventType type) {
+        ControlEvent event = new ControlEvent();
+        event.setType(type.name());
+        return event;
+    }
+}
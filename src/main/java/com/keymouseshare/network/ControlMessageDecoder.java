@@ -4,44 +4,56 @@ import com.google.gson.Gson;
 import com.keymouseshare.bean.ControlEvent;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 
 import java.nio.charset.StandardCharsets;
-import java.util.List;
 
 /**
  * 控制消息解码器
+ * 按帧首字节自动识别JSON与二进制编码，兼容新旧版本节点
+ * <p>
+ * 帧格式为4字节长度 + 数据，由 {@link LengthFieldBasedFrameDecoder} 切分。长度超过 {@link #MAX_FRAME_LENGTH}
+ * 时读到长度字段即抛出TooLongFrameException，不会等待并累积该帧的数据，处理器随后关闭连接；
+ * 负数长度同样视为损坏的帧。切出的帧是累积缓冲区的切片，二进制帧直接从切片解码；
+ * JSON帧一次解码为String后交给Gson，不为每帧创建InputStreamReader及其8KB的解码缓冲。
  */
-public class ControlMessageDecoder extends ByteToMessageDecoder {
+public class ControlMessageDecoder extends LengthFieldBasedFrameDecoder {
+    // 单帧数据的最大长度，控制事件通常不足百字节
+    static final int MAX_FRAME_LENGTH = 64 * 1024;
+
     private final Gson gson = new Gson();
 
+    public ControlMessageDecoder() {
+        super(MAX_FRAME_LENGTH, 0, 4, 0, 4, true);
+    }
+
     @Override
-    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
-        // 确保有足够的数据可读
-        if (in.readableBytes() < 4) {
-            return;
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+        if (frame == null) {
+            return null;
         }
-
-        // 标记当前读位置
-        in.markReaderIndex();
-        
-        // 读取数据长度
-        int dataLength = in.readInt();
-        
-        // 检查是否有足够的数据
-        if (in.readableBytes() < dataLength) {
-            // 重置读位置
-            in.resetReaderIndex();
-            return;
+        try {
+            int length = frame.readableBytes();
+            if (length == 0) {
+                throw new CorruptedFrameException("控制帧为空");
+            }
+            // 二进制编码直接从ByteBuf解码
+            if (ControlEventCodec.isBinary(frame.getByte(frame.readerIndex()))) {
+                return ControlEventCodec.decode(frame, length);
+            }
+            return decodeJson(frame);
+        } finally {
+            frame.release();
         }
+    }
 
-        // 读取数据
-        byte[] data = new byte[dataLength];
-        in.readBytes(data);
-        
-        // 将数据转换为ControlEvent对象
-        String json = new String(data, StandardCharsets.UTF_8);
-        ControlEvent event = gson.fromJson(json, ControlEvent.class);
-        out.add(event);
+    private ControlEvent decodeJson(ByteBuf frame) {
+        ControlEvent event = gson.fromJson(frame.toString(StandardCharsets.UTF_8), ControlEvent.class);
+        if (event == null || event.getType() == null) {
+            throw new CorruptedFrameException("控制帧缺少事件类型");
+        }
+        return event;
     }
-}
\ No newline at end of file
+}
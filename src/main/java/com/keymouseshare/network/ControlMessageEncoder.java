@@ -10,12 +10,32 @@ import java.nio.charset.StandardCharsets;
 
 /**
  * 控制消息编码器
+ * 默认使用JSON编码，握手协商后可切换为二进制编码
  */
 public class ControlMessageEncoder extends MessageToByteEncoder<ControlEvent> {
     private final Gson gson = new Gson();
 
+    private volatile WireFormat wireFormat = WireFormat.JSON;
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, ControlEvent event, ByteBuf out) {
+        if (wireFormat == WireFormat.BINARY && ControlEventCodec.canEncode(event)) {
+            // 预留长度字段，写完数据后回填
+            int lengthIndex = out.writerIndex();
+            out.writeInt(0);
+            ControlEventCodec.encode(event, out);
+            out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+            return;
+        }
+
         // 将ControlEvent对象转换为JSON字符串
         String json = gson.toJson(event);
         byte[] data = json.getBytes(StandardCharsets.UTF_8);
@@ -24,4 +44,4 @@ public class ControlMessageEncoder extends MessageToByteEncoder<ControlEvent> {
         out.writeInt(data.length);
         out.writeBytes(data);
     }
-}
\ No newline at end of file
+}
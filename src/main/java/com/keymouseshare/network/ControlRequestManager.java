@@ -11,6 +11,8 @@ import javafx.stage.Window;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -27,6 +29,21 @@ public class ControlRequestManager {
     private final VirtualDesktopStorage virtualDesktopStorage = VirtualDesktopStorage.getInstance();
     private final DeviceStorage deviceStorage = DeviceStorage.getInstance();
 
+    // 路由缓存：最近一次发送的目标IP（按引用比较，通常是激活屏幕上的同一个字符串）及其会话
+    private volatile Route route;
+
+    private static final class Route {
+        final String deviceIp;
+        final int sessionId;
+        final ControlSession session;
+
+        Route(String deviceIp, int sessionId, ControlSession session) {
+            this.deviceIp = deviceIp;
+            this.sessionId = sessionId;
+            this.session = session;
+        }
+    }
+
 
     public ControlRequestManager() {
         logger.debug("创建ControlRequestManager实例");
@@ -196,13 +213,58 @@ public class ControlRequestManager {
     public void sendControlRequest( ControlEvent event) {
         logger.debug("准备发送控制请求: {}", event);
         if (controlServer != null) {
-            controlServer.sendControlEvent(event);
+            controlServer.sendControlEvent(route(event.getDeviceIp()), event);
             logger.debug("已发送控制请求到客户端: {}, 事件类型: {}, 数据: ({},{},{})", event.getDeviceIp(), event.getType(), event.getX(), event.getY(), event.getKeyCode());
         } else {
             logger.error("控制服务器未启动，无法发送控制请求到客户端: {}", event.getDeviceIp());
         }
     }
 
+    /**
+     * 发送鼠标移动到远程设备
+     * 鼠标移动频率很高，不经过ControlEvent，也不输出日志
+     *
+     * @param deviceIp 目标设备IP
+     * @param x        目标屏幕内的x坐标
+     * @param y        目标屏幕内的y坐标
+     */
+    public void sendMouseMove(String deviceIp, int x, int y) {
+        if (controlServer != null) {
+            controlServer.sendMouseMove(route(deviceIp), x, y);
+        }
+    }
+
+    /**
+     * 获取各客户端当前的鼠标移动发送速率，非主控端返回空映射
+     *
+     * @return 客户端IP到速率(Hz)的映射
+     */
+    public Map<String, Integer> getMotionRates() {
+        ControlServer server = controlServer;
+        return server != null ? server.getMotionRates() : Collections.emptyMap();
+    }
+
+    /**
+     * 获取目标设备的会话ID
+     * 目标与上次相同且会话仍然有效时直接使用缓存，只有切换目标或重连后才按IP查找
+     *
+     * @param deviceIp 目标设备IP
+     * @return 会话ID，未连接时返回-1
+     */
+    private int route(String deviceIp) {
+        Route current = route;
+        if (current != null && current.deviceIp == deviceIp
+                && controlServer.getSession(current.sessionId) == current.session && current.session.isActive()) {
+            return current.sessionId;
+        }
+        int sessionId = controlServer.resolveSession(deviceIp);
+        ControlSession session = controlServer.getSession(sessionId);
+        if (session != null) {
+            route = new Route(deviceIp, sessionId, session);
+        }
+        return sessionId;
+    }
+
     /**
      * 断开TCP连接
      */
@@ -2,42 +2,48 @@ package com.keymouseshare.network;
 
 import com.keymouseshare.bean.ControlEvent;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
 
+import com.keymouseshare.util.AppRuntime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Netty服务端初始化
+ * <p>
+ * 客户端会话按整数ID保存在写时复制的数组中，发送路径先用 {@link #resolveSession(String)} 把IP解析为ID并缓存，
+ * 之后按ID发送只需一次数组读取。会话只在连接建立和断开时变化，写时复制的开销可以忽略。
  */
 public class ControlServer {
     private static final Logger logger = LoggerFactory.getLogger(ControlServer.class);
     
-    //处理客户端连接请求（通常 1 个线程）
-    private EventLoopGroup bossGroup;
-    // 处理已建立连接的 I/O 操作（线程数建议与 CPU 核心数匹配）
-    private EventLoopGroup workerGroup;
+    // 监听通道，接受连接与处理已建立连接的I/O都使用应用共享的EventLoopGroup
+    private Channel serverChannel;
     
-    // 保存客户端连接的映射
-    private Map<String, ChannelHandlerContext> clientChannels = new ConcurrentHashMap<>();
+    // 按客户端IP索引的会话，只用于解析会话ID
+    private final Map<String, ControlSession> clientChannels = new ConcurrentHashMap<>();
+
+    // 按会话ID索引的会话，空位为null，写时复制
+    private volatile ControlSession[] sessions = new ControlSession[0];
 
     public void start(int port) throws Exception {
         logger.debug("正在初始化ControlServer...");
-        bossGroup = new NioEventLoopGroup();
-        workerGroup = new NioEventLoopGroup();
-        logger.info("ControlServer的EventLoopGroup已创建");
-        
+        EventLoopGroup group = AppRuntime.getInstance().ioGroup();
+
         ServerBootstrap bootstrap = new ServerBootstrap()
-            .group(bossGroup, workerGroup)
-            .channel(NioServerSocketChannel.class) // 使用 NIO 通道
+            .group(group)
+            .channel(TransportSelector.serverChannelClass()) // Linux上使用原生epoll/io_uring，否则使用NIO
             .childHandler(new ChannelInitializer<SocketChannel>() {
                 @Override
                 protected void initChannel(SocketChannel ch) {
@@ -45,55 +51,151 @@ public class ControlServer {
                     ch.pipeline()
                         .addLast(new ControlMessageDecoder())// 添加自定义处理器
                         .addLast(new ControlMessageEncoder())// 添加自定义处理器
-                        .addLast(new ControlServerHandler(clientChannels));// 添加自定义处理器
+                        .addLast(new ControlServerHandler(ControlServer.this));// 添加自定义处理器
                     logger.debug("SocketChannel管道初始化完成");
                 }
             });
 
+        TransportSelector.configure(bootstrap);
+        // 客户端停止读取时连接很快变为不可写，由ControlSession按事件类别丢弃或重置，单个客户端占用的内存有上限
+        bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                new WriteBufferWaterMark(ControlSession.WRITE_LOW_WATER_MARK, ControlSession.WRITE_HIGH_WATER_MARK));
+
         logger.info("正在绑定端口 {}...", port);
-        bootstrap.bind(port).sync();// 绑定端口 阻塞直到服务器关闭
+        serverChannel = bootstrap.bind(port).sync().channel();// 绑定端口
         logger.info("ControlServer已成功启动并绑定到端口 {}", port);
     }
 
 
     public void stop() {
         logger.info("正在停止ControlServer...");
-        if (workerGroup != null) {
-            workerGroup.shutdownGracefully();
-            logger.debug("workerGroup已关闭");
-        }
-        if (bossGroup != null) {
-            bossGroup.shutdownGracefully();
-            logger.debug("bossGroup已关闭");
+        // 共享的EventLoopGroup由AppRuntime统一关闭，这里只关闭监听通道
+        if (serverChannel != null) {
+            serverChannel.close();
+            serverChannel = null;
+            logger.debug("监听通道已关闭");
         }
         
         // 关闭所有客户端连接
         logger.debug("正在关闭所有客户端连接，当前客户端数量: {}", clientChannels.size());
-        for (ChannelHandlerContext ctx : clientChannels.values()) {
-            if (ctx != null && ctx.channel().isActive()) {
-                ctx.close();
+        for (ControlSession session : clientChannels.values()) {
+            if (session != null && session.isActive()) {
+                session.close();
             }
         }
         clientChannels.clear();
+        synchronized (this) {
+            sessions = new ControlSession[0];
+        }
         logger.info("ControlServer已完全停止");
     }
+
+    /**
+     * 连接建立时注册会话，分配最小的空闲ID
+     */
+    synchronized ControlSession register(String clientIp, ChannelHandlerContext ctx) {
+        ControlSession[] current = sessions;
+        int id = 0;
+        while (id < current.length && current[id] != null) {
+            id++;
+        }
+        ControlSession[] next = Arrays.copyOf(current, Math.max(current.length, id + 1));
+        ControlSession session = new ControlSession(id, clientIp, ctx);
+        next[id] = session;
+        sessions = next;
+        clientChannels.put(clientIp, session);
+        return session;
+    }
+
+    /**
+     * 连接断开时注销会话
+     */
+    synchronized void unregister(ControlSession session) {
+        ControlSession[] current = sessions;
+        int id = session.getId();
+        if (id < current.length && current[id] == session) {
+            ControlSession[] next = current.clone();
+            next[id] = null;
+            sessions = next;
+        }
+        clientChannels.remove(session.getClientIp(), session);
+    }
+
+    /**
+     * 把客户端IP解析为会话ID，调用方应缓存结果
+     *
+     * @param ipAddress 客户端IP
+     * @return 会话ID，客户端未连接时返回-1
+     */
+    public int resolveSession(String ipAddress) {
+        ControlSession session = ipAddress != null ? clientChannels.get(ipAddress) : null;
+        return session != null && session.isActive() ? session.getId() : -1;
+    }
+
+    /**
+     * 按ID获取会话
+     *
+     * @return 会话，ID无效或已断开时返回null
+     */
+    public ControlSession getSession(int sessionId) {
+        ControlSession[] current = sessions;
+        return sessionId >= 0 && sessionId < current.length ? current[sessionId] : null;
+    }
     
     /**
      * 向指定IP地址的客户端发送控制事件
+     * 事件进入会话的发送队列，由连接所属的EventLoop批量写出
      *
      * @param event    控制事件
      */
     public void sendControlEvent(ControlEvent event) {
+        sendControlEvent(resolveSession(event.getDeviceIp()), event);
+    }
+
+    /**
+     * 向指定会话发送控制事件
+     *
+     * @param sessionId 会话ID
+     * @param event     控制事件
+     */
+    public void sendControlEvent(int sessionId, ControlEvent event) {
         logger.debug("准备发送控制事件到客户端: {}, 事件类型: {}", event.getDeviceIp(), event.getType());
-        ChannelHandlerContext ctx = clientChannels.get(event.getDeviceIp());
-        if (ctx != null && ctx.channel().isActive()) {
-            ctx.writeAndFlush(event);
-            logger.debug("控制事件已发送到客户端: {}", event.getDeviceIp());
+        ControlSession session = getSession(sessionId);
+        if (session != null && session.isActive()) {
+            session.send(event);
+            logger.debug("控制事件已加入客户端 {} 的发送队列", event.getDeviceIp());
         } else {
             logger.warn("无法发送控制事件到客户端: {}，连接可能已断开", event.getDeviceIp());
         }
     }
     
+    /**
+     * 发送鼠标移动到指定客户端，稳定移动时不创建对象
+     *
+     * @param ipAddress 客户端IP
+     * @param x         目标屏幕内的x坐标
+     * @param y         目标屏幕内的y坐标
+     */
+    public void sendMouseMove(String ipAddress, int x, int y) {
+        sendMouseMove(resolveSession(ipAddress), x, y);
+    }
+
+    /**
+     * 发送鼠标移动到指定会话
+     *
+     * @param sessionId 会话ID
+     * @param x         目标屏幕内的x坐标
+     * @param y         目标屏幕内的y坐标
+     */
+    public void sendMouseMove(int sessionId, int x, int y) {
+        ControlSession session = getSession(sessionId);
+        if (session != null && session.isActive()) {
+            session.sendMouseMove(x, y);
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("无法发送鼠标移动到会话: {}，连接可能已断开", sessionId);
+        }
+    }
+
     /**
      * 获取当前连接的客户端数量
      * 
@@ -111,9 +213,24 @@ public class ControlServer {
      * @return 如果已连接返回true，否则返回false
      */
     public boolean isClientConnected(String ipAddress) {
-        ChannelHandlerContext ctx = clientChannels.get(ipAddress);
-        boolean connected = ctx != null && ctx.channel().isActive();
+        ControlSession session = clientChannels.get(ipAddress);
+        boolean connected = session != null && session.isActive();
         logger.debug("检查客户端 {} 是否连接: {}", ipAddress, connected);
         return connected;
     }
+
+    /**
+     * 获取各客户端当前的鼠标移动发送速率
+     *
+     * @return 客户端IP到速率(Hz)的映射，按会话ID排序
+     */
+    public Map<String, Integer> getMotionRates() {
+        Map<String, Integer> rates = new LinkedHashMap<>();
+        for (ControlSession session : sessions) {
+            if (session != null && session.isActive()) {
+                rates.put(session.getClientIp(), session.getMotionRate());
+            }
+        }
+        return rates;
+    }
 }
\ No newline at end of file
@@ -1,43 +1,45 @@
 package com.keymouseshare.network;
 
 import com.keymouseshare.bean.*;
+import com.keymouseshare.keyboard.MouseKeyBoardFactory;
 import com.keymouseshare.storage.DeviceStorage;
 import com.keymouseshare.storage.VirtualDesktopStorage;
-import com.keymouseshare.util.NetUtil;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetSocketAddress;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * 控制服务端处理器
+ * 客户端身份在连接建立时解析一次，会话保存在通道属性中，后续事件不再解析远端地址
  */
 public class ControlServerHandler extends SimpleChannelInboundHandler<ControlEvent> {
     private static final Logger logger = LoggerFactory.getLogger(ControlServerHandler.class);
 
     private final VirtualDesktopStorage virtualDesktopStorage = VirtualDesktopStorage.getInstance();
     
-    // 客户端连接映射
-    private Map<String, ChannelHandlerContext> clientChannels;
+    // 会话注册表
+    private final ControlServer server;
     
-    public ControlServerHandler(Map<String, ChannelHandlerContext> clientChannels) {
+    public ControlServerHandler(ControlServer server) {
         logger.debug("创建ControlServerHandler实例");
-        this.clientChannels = clientChannels;
+        this.server = server;
     }
-    
-    // 虚拟桌面实例
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) {
-        String clientIp = NetUtil.dealRemoteAddress(ctx.channel().remoteAddress().toString());
+        String clientIp = ((InetSocketAddress) ctx.channel().remoteAddress()).getAddress().getHostAddress();
         logger.info("控制服务端连接已激活，客户端IP: {}", clientIp);
         
-        // 保存客户端连接
-        clientChannels.put(clientIp, ctx);
-        logger.debug("客户端 {} 已添加到连接映射中，当前客户端数量: {}", clientIp, clientChannels.size());
+        // 保存客户端会话
+        ControlSession session = server.register(clientIp, ctx);
+        ctx.channel().attr(ControlSession.SESSION).set(session);
+        logger.debug("客户端 {} 已注册为会话 {}，当前客户端数量: {}", clientIp, session.getId(), server.getClientCount());
         
         List<ScreenInfo> screenInfo = DeviceStorage.getInstance().getDeviceScreens(clientIp);
         logger.debug("获取到客户端 {} 的屏幕信息数量: {}", clientIp, screenInfo != null ? screenInfo.size() : 0);
@@ -50,12 +52,26 @@ public class ControlServerHandler extends SimpleChannelInboundHandler<ControlEve
     
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
-        String clientIp = NetUtil.dealRemoteAddress(ctx.channel().remoteAddress().toString());
+        ControlSession session = ctx.channel().attr(ControlSession.SESSION).get();
+        if (session == null) {
+            return;
+        }
+        String clientIp = session.getClientIp();
         logger.info("控制服务端连接已断开，客户端IP: {}", clientIp);
         
         // 移除客户端连接
-        clientChannels.remove(clientIp);
-        logger.debug("客户端 {} 已从连接映射中移除，剩余客户端数量: {}", clientIp, clientChannels.size());
+        server.unregister(session);
+        if (session.getKeepAlive() != null) {
+            session.getKeepAlive().stop();
+        }
+        session.closeMotionChannel();
+        logger.debug("客户端 {} 已从连接映射中移除，剩余客户端数量: {}", clientIp, server.getClientCount());
+
+        // 鼠标正位于该客户端时立即交还本机控制
+        ScreenInfo activeScreen = virtualDesktopStorage.getActiveScreen();
+        if (activeScreen != null && clientIp.equals(activeScreen.getDeviceIp())) {
+            MouseKeyBoardFactory.getFactory().onRemoteDeviceLost(clientIp);
+        }
         
         // 从虚拟桌面中移除该客户端的屏幕信息
         VirtualDesktopStorage virtualDesktopStorage = VirtualDesktopStorage.getInstance();
@@ -67,25 +83,101 @@ public class ControlServerHandler extends SimpleChannelInboundHandler<ControlEve
 
     @Override
     public void channelRead0(ChannelHandlerContext ctx, ControlEvent event) {
-        String clientIp = NetUtil.dealRemoteAddress(ctx.channel().remoteAddress().toString());
+        ControlSession session = ctx.channel().attr(ControlSession.SESSION).get();
+        if (ControlKeepAlive.isPong(event)) {
+            if (session.getKeepAlive() != null) {
+                session.getKeepAlive().onPong(event.getSeq());
+            }
+            return;
+        }
         // 处理从客户端接收到的控制事件
-        logger.debug("接收到控制事件: {} 来自客户端: {}", event.getType(), clientIp);
+        logger.debug("接收到控制事件: {} 来自客户端: {}", event.getType(), session.getClientIp());
+        if (ControlHandshake.isRequest(event)) {
+            handleHandshake(ctx, event, session);
+            return;
+        }
+        if (ControlEventType.MotionChannel.name().equals(event.getType())) {
+            openMotionChannel(ctx, session, event.getX(), event.getY());
+            return;
+        }
+        if (ControlEventType.MotionReport.name().equals(event.getType())) {
+            MotionChannel.Sender sender = session.getMotionSender();
+            if (sender != null) {
+                sender.onLossReport(event.getX());
+            }
+            return;
+        }
         // 这里可以添加具体的事件处理逻辑
         
         // 示例：将事件回传给客户端
         ctx.writeAndFlush(event);
-        logger.debug("控制事件已处理并回传给客户端: {}", clientIp);
+        logger.debug("控制事件已处理并回传给客户端: {}", session.getClientIp());
+    }
+
+    /**
+     * 处理客户端握手：回复双方共同支持的能力，并切换编码
+     */
+    private void handleHandshake(ChannelHandlerContext ctx, ControlEvent event, ControlSession session) {
+        Set<String> accepted = ControlHandshake.negotiate(ControlHandshake.features(event));
+        // 确认消息需在切换编码前写出，保证客户端能以JSON解析
+        ctx.writeAndFlush(ControlHandshake.ack(accepted));
+        if (accepted.contains(ControlHandshake.FEATURE_BINARY)) {
+            ctx.pipeline().get(ControlMessageEncoder.class).setWireFormat(WireFormat.BINARY);
+            session.setBinary(true);
+        }
+        if (accepted.contains(ControlHandshake.FEATURE_PING)) {
+            ControlKeepAlive keepAlive = new ControlKeepAlive(ctx, session.getClientIp(), true, session::onKeepAliveTick);
+            session.setKeepAlive(keepAlive);
+            keepAlive.start();
+        }
+        logger.info("客户端 {} 握手完成，协商能力: {}", session.getClientIp(), accepted);
+    }
+
+    /**
+     * 连接客户端的UDP运动端口，成功后鼠标移动改走UDP
+     *
+     * @param redundancy 客户端声明的冗余偏好，见 {@link MotionChannel#localRedundancyPreference()}
+     */
+    private void openMotionChannel(ChannelHandlerContext ctx, ControlSession session, int port, int redundancy) {
+        InetSocketAddress remote = (InetSocketAddress) ctx.channel().remoteAddress();
+        InetSocketAddress target = new InetSocketAddress(remote.getAddress(), port);
+        MotionChannel.connect(ctx.channel().eventLoop(), target).addListener((ChannelFuture future) -> {
+            if (!future.isSuccess()) {
+                logger.warn("无法连接客户端 {} 的运动通道，鼠标移动继续走TCP: {}", session.getClientIp(), future.cause().getMessage());
+                return;
+            }
+            if (!ctx.channel().isActive()) {
+                future.channel().close();
+                return;
+            }
+            MotionChannel.Sender sender = new MotionChannel.Sender(future.channel(), session.getClientIp(), redundancy);
+            session.setMotionSender(sender);
+            logger.info("客户端 {} 的鼠标移动改走UDP运动通道: {}，冗余位置个数 {}{}", session.getClientIp(), target,
+                    sender.getRedundancy(), redundancy > 0 ? "(客户端固定)" : "(自适应)");
+        });
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        ControlSession session = ctx.channel().attr(ControlSession.SESSION).get();
+        if (session != null) {
+            session.onWritabilityChanged();
+        }
+        ctx.fireChannelWritabilityChanged();
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        String clientIp = NetUtil.dealRemoteAddress(ctx.channel().remoteAddress().toString());
+        ControlSession session = ctx.channel().attr(ControlSession.SESSION).get();
+        String clientIp = session != null ? session.getClientIp() : String.valueOf(ctx.channel().remoteAddress());
         logger.error("控制服务端发生异常，客户端IP: {}，异常信息: {}", clientIp, cause.getMessage(), cause);
         ctx.close();
         
         // 移除客户端连接
-        clientChannels.remove(clientIp);
-        logger.debug("由于异常，客户端 {} 已从连接映射中移除", clientIp);
+        if (session != null) {
+            server.unregister(session);
+            logger.debug("由于异常，客户端 {} 已从连接映射中移除", clientIp);
+        }
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,494 @@
+package com.keymouseshare.network;
+
+import com.keymouseshare.bean.ControlEvent;
+import com.keymouseshare.bean.ControlEventType;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoop;
+import io.netty.util.AttributeKey;
+import io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端与单个客户端之间的控制会话
+ * <p>
+ * 任意线程（通常是JNativeHook回调线程）调用 {@link #send(ControlEvent)} 只把事件放入MPSC队列，
+ * 由该连接所属的EventLoop统一取出、写出并只flush一次。键盘和按键事件既不丢弃也不重排。
+ * <p>
+ * 鼠标移动走 {@link #sendMouseMove(int, int)}：坐标打包进一个long槽位，只保留最新位置，
+ * 二进制编码的连接直接写入池化ByteBuf，稳定移动时整条路径不创建对象。
+ * <p>
+ * 会话在连接建立时创建并保存在通道属性 {@link #SESSION} 中，由一个较小的整数ID标识，
+ * 服务端按ID从数组中取得会话，发送路径不做字符串查找。
+ * <p>
+ * 协商了UDP运动通道后，槽位中的最新位置改由 {@link MotionChannel} 以数据报发出；
+ * 按键等事件前补发的位置仍走TCP，并与数据报共用同一序号序列。鼠标按钮与滚轮事件也分配序号，
+ * 其坐标为目标屏幕内的位置，客户端在该坐标上注入，不受先于它到达的新数据报影响。
+ * <p>
+ * 鼠标移动的发送速率由 {@link MotionRateController} 按链路状态控制，未到发送时间的位置留在槽位中
+ * 继续合并，到时再发出；离散事件入队后立即发送，连同此前未发出的位置一起走TCP。
+ * <p>
+ * 客户端停止读取（如注入线程被系统弹窗阻塞）时连接变为不可写，此时按类别减载：
+ * 走TCP的鼠标移动只保留最后一个位置，其余丢弃；客户端按下按钮时使用的是此前注入的位置，
+ * 因此下一个离散事件写出前先补发保留的位置；按键等离散事件继续写入，直到待写字节超过 {@link #KEY_EVENT_BUDGET}；
+ * 超出后清空所有待发送事件并重置会话，连接恢复可写时先发送ReleaseAll让客户端释放所有按键，
+ * 因此每个客户端占用的写缓冲有上限。
+ */
+public class ControlSession {
+    private static final Logger logger = LoggerFactory.getLogger(ControlSession.class);
+
+    // 通道上保存的会话
+    public static final AttributeKey<ControlSession> SESSION = AttributeKey.valueOf("keymouseshare.session");
+
+    // 空的鼠标移动槽位
+    private static final long NO_PENDING_MOVE = Long.MIN_VALUE;
+
+    // 单个鼠标移动帧的最大长度：4字节长度 + 类型 + 标志 + 两个varint
+    private static final int MOUSE_MOVE_FRAME_MAX = 16;
+
+    // 写缓冲水位线，待写字节超过高水位时连接变为不可写，低于低水位时恢复
+    static final int WRITE_LOW_WATER_MARK = 32 * 1024;
+    static final int WRITE_HIGH_WATER_MARK = 64 * 1024;
+    // 不可写期间离散事件可占用的写缓冲上限，超过即重置会话
+    private static final long KEY_EVENT_BUDGET = 256 * 1024;
+
+    // 不携带任何字段，可在多个连接间共享
+    private static final ControlEvent RELEASE_ALL = new ControlEvent();
+
+    static {
+        RELEASE_ALL.setType(ControlEventType.ReleaseAll.name());
+    }
+
+    private final int id;
+    private final String clientIp;
+    private final ChannelHandlerContext ctx;
+
+    // 多生产者单消费者队列，消费者为连接所属的EventLoop
+    private final Queue<ControlEvent> outbound = PlatformDependent.newMpscQueue();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable drainTask = this::drain;
+
+    // 最新待发送的鼠标位置，高32位为x、低32位为y
+    private final AtomicLong pendingMove = new AtomicLong(NO_PENDING_MOVE);
+
+    // 握手协商为二进制编码后置位
+    private volatile boolean binary = false;
+
+    // 被合并掉的鼠标移动事件数量
+    private final LongAdder coalescedMoves = new LongAdder();
+    // 连接不可写时丢弃的鼠标移动与其它事件数量、会话重置次数
+    private final LongAdder shedMoves = new LongAdder();
+    private final LongAdder shedEvents = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+    // 已重置、等待连接恢复可写后发送ReleaseAll，只在EventLoop中访问
+    private boolean resetPending = false;
+    // 不可写期间保留的最后一个位置，随下一个离散事件补发，只在EventLoop中访问
+    private long heldMove = NO_PENDING_MOVE;
+
+    // 握手协商了ping能力后才有
+    private volatile ControlKeepAlive keepAlive;
+
+    // 鼠标移动速率控制
+    private final MotionRateController motionRate;
+    // 下一次允许发送鼠标移动的时间与是否已安排延时发送，只在EventLoop中访问
+    private long nextMoveNanos = 0;
+    private boolean moveFlushScheduled = false;
+    private final Runnable moveFlushTask = this::flushDelayedMove;
+
+    // UDP运动通道的发送端，与控制连接在同一个EventLoop上
+    private volatile MotionChannel.Sender motionSender;
+
+    public ControlSession(int id, String clientIp, ChannelHandlerContext ctx) {
+        this.id = id;
+        this.clientIp = clientIp;
+        this.ctx = ctx;
+        this.motionRate = new MotionRateController(clientIp);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getClientIp() {
+        return clientIp;
+    }
+
+    public ChannelHandlerContext getContext() {
+        return ctx;
+    }
+
+    public boolean isActive() {
+        return ctx.channel().isActive();
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    void setKeepAlive(ControlKeepAlive keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    ControlKeepAlive getKeepAlive() {
+        return keepAlive;
+    }
+
+    void setMotionSender(MotionChannel.Sender motionSender) {
+        this.motionSender = motionSender;
+    }
+
+    MotionChannel.Sender getMotionSender() {
+        return motionSender;
+    }
+
+    /**
+     * 鼠标移动是否走UDP运动通道
+     */
+    public boolean isUdpMotion() {
+        MotionChannel.Sender sender = motionSender;
+        return sender != null && sender.isActive();
+    }
+
+    void closeMotionChannel() {
+        MotionChannel.Sender sender = motionSender;
+        motionSender = null;
+        if (sender != null) {
+            sender.close();
+        }
+    }
+
+    /**
+     * 保活检查时调用，在EventLoop中执行；没有鼠标移动要发送时也按链路状态调整速率
+     */
+    void onKeepAliveTick() {
+        motionRate.maybeEvaluate(ctx.channel(), keepAlive, System.nanoTime());
+    }
+
+    /**
+     * 当前的鼠标移动发送速率(Hz)
+     */
+    public int getMotionRate() {
+        return motionRate.getRate();
+    }
+
+    /**
+     * 控制连接可写状态变化，在EventLoop中调用
+     */
+    void onWritabilityChanged() {
+        motionRate.onWritabilityChanged(ctx.channel());
+        if (ctx.channel().isWritable()) {
+            // 发出重置后的ReleaseAll以及等待中的事件
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * 客户端当前的可疑程度phi，未启用保活时为0
+     */
+    public double getSuspicion() {
+        ControlKeepAlive current = keepAlive;
+        return current != null ? current.getSuspicion() : 0;
+    }
+
+    /**
+     * 发送控制事件，可在任意线程调用
+     *
+     * @param event 控制事件
+     */
+    public void send(ControlEvent event) {
+        if (isMouseMove(event)) {
+            sendMouseMove(event.getX(), event.getY());
+            return;
+        }
+        // 尚未发出的移动先入队，保证移动与其后的按键事件保持先后顺序
+        long move = pendingMove.getAndSet(NO_PENDING_MOVE);
+        if (move != NO_PENDING_MOVE) {
+            outbound.offer(new ControlEvent(clientIp, ControlEventType.MouseMoved.name(), unpackX(move), unpackY(move)));
+        }
+        outbound.offer(event);
+        scheduleDrain();
+    }
+
+    /**
+     * 发送鼠标移动，可在任意线程调用；未发出的旧位置会被新位置覆盖
+     *
+     * @param x 目标屏幕内的x坐标
+     * @param y 目标屏幕内的y坐标
+     */
+    public void sendMouseMove(int x, int y) {
+        long previous = pendingMove.getAndSet(pack(x, y));
+        if (previous == NO_PENDING_MOVE) {
+            scheduleDrain();
+        } else {
+            coalescedMoves.increment();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            ctx.channel().eventLoop().execute(drainTask);
+        }
+    }
+
+    /**
+     * 在EventLoop中写出所有待发送事件并只flush一次
+     */
+    private void drain() {
+        // 先清除标记再取队列，保证之后入队的事件一定会触发新的drain
+        drainScheduled.set(false);
+        if (!ctx.channel().isActive()) {
+            outbound.clear();
+            pendingMove.set(NO_PENDING_MOVE);
+            heldMove = NO_PENDING_MOVE;
+            return;
+        }
+
+        boolean writable = ctx.channel().isWritable();
+        boolean written = false;
+        if (resetPending) {
+            if (!writable) {
+                discardPending();
+                return;
+            }
+            resetPending = false;
+            ctx.write(RELEASE_ALL, ctx.voidPromise());
+            written = true;
+            logger.info("客户端 {} 已恢复可写，要求其释放所有按键", clientIp);
+        }
+
+        ControlEvent event;
+        MotionChannel.Sender sender = isUdpMotion() ? motionSender : null;
+        while ((event = outbound.poll()) != null) {
+            if (isMouseMove(event)) {
+                if (!writable) {
+                    // 客户端在注入按钮时使用当前光标位置，不能丢弃按键前的最后一个位置，只丢弃被它取代的旧位置
+                    holdMove(pack(event.getX(), event.getY()));
+                    continue;
+                }
+                heldMove = NO_PENDING_MOVE;
+                writeTcpMove(event, sender);
+            } else {
+                if (!writable && MotionRateController.pendingBytes(ctx.channel()) > KEY_EVENT_BUDGET) {
+                    shedEvents.increment();
+                    reset();
+                    break;
+                }
+                if (heldMove != NO_PENDING_MOVE) {
+                    writeTcpMove(new ControlEvent(clientIp, ControlEventType.MouseMoved.name(), unpackX(heldMove), unpackY(heldMove)), sender);
+                    heldMove = NO_PENDING_MOVE;
+                }
+                if (sender != null && isPositionedMouseEvent(event)) {
+                    // TCP上的按钮与滚轮可能晚于之后的数据报到达，带上序号，客户端据此在事件自身坐标上注入
+                    event.setSeq(sender.nextSeq(event.getX(), event.getY()));
+                }
+                ctx.write(event, ctx.voidPromise());
+            }
+            written = true;
+        }
+        long move;
+        if (resetPending) {
+            move = NO_PENDING_MOVE;
+        } else if (!writable && sender == null) {
+            // UDP通道不占用写缓冲，只有走TCP的移动需要暂存，等下一个离散事件或恢复可写时再发
+            move = pendingMove.getAndSet(NO_PENDING_MOVE);
+            if (move != NO_PENDING_MOVE) {
+                holdMove(move);
+                move = NO_PENDING_MOVE;
+            }
+        } else {
+            if (heldMove != NO_PENDING_MOVE) {
+                // 恢复可写后槽位为空时补发暂存的位置，槽位中有更新的位置时暂存位置作废
+                if (!pendingMove.compareAndSet(NO_PENDING_MOVE, heldMove)) {
+                    shedMoves.increment();
+                }
+                heldMove = NO_PENDING_MOVE;
+            }
+            move = takeMoveIfDue();
+        }
+        if (move != NO_PENDING_MOVE) {
+            if (sender != null) {
+                sender.send(unpackX(move), unpackY(move));
+            } else {
+                writeMove(unpackX(move), unpackY(move));
+                written = true;
+            }
+        }
+        if (written) {
+            ctx.flush();
+        }
+    }
+
+    /**
+     * 不可写期间暂存位置，被取代的旧位置计为丢弃
+     */
+    private void holdMove(long move) {
+        if (heldMove != NO_PENDING_MOVE) {
+            shedMoves.increment();
+        }
+        heldMove = move;
+    }
+
+    /**
+     * 按键等离散事件前的位置走TCP，协商了UDP通道时分配序号，让迟到的旧数据报在客户端被丢弃
+     */
+    private void writeTcpMove(ControlEvent move, MotionChannel.Sender sender) {
+        if (sender != null) {
+            move.setSeq(sender.nextSeq(move.getX(), move.getY()));
+        }
+        ctx.write(move, ctx.voidPromise());
+    }
+
+    /**
+     * 离散事件超出写缓冲预算，丢弃所有待发送事件，等连接恢复可写后要求客户端释放所有按键
+     */
+    private void reset() {
+        resetPending = true;
+        resets.increment();
+        discardPending();
+        logger.warn("客户端 {} 长时间未读取，待写 {} 字节超出预算，重置控制会话（已丢弃移动 {} 个、其它事件 {} 个）",
+                clientIp, MotionRateController.pendingBytes(ctx.channel()), shedMoves.sum(), shedEvents.sum());
+    }
+
+    private void discardPending() {
+        ControlEvent event;
+        while ((event = outbound.poll()) != null) {
+            if (isMouseMove(event)) {
+                shedMoves.increment();
+            } else {
+                shedEvents.increment();
+            }
+        }
+        if (pendingMove.getAndSet(NO_PENDING_MOVE) != NO_PENDING_MOVE) {
+            shedMoves.increment();
+        }
+        if (heldMove != NO_PENDING_MOVE) {
+            shedMoves.increment();
+            heldMove = NO_PENDING_MOVE;
+        }
+    }
+
+    /**
+     * 到达发送时间时取出槽位中的位置，否则保留在槽位中并安排一次延时发送
+     */
+    private long takeMoveIfDue() {
+        if (pendingMove.get() == NO_PENDING_MOVE) {
+            return NO_PENDING_MOVE;
+        }
+        long now = System.nanoTime();
+        long waitNanos = nextMoveNanos - now;
+        if (waitNanos > 0) {
+            if (!moveFlushScheduled) {
+                moveFlushScheduled = true;
+                ctx.channel().eventLoop().schedule(moveFlushTask, waitNanos, TimeUnit.NANOSECONDS);
+            }
+            return NO_PENDING_MOVE;
+        }
+        motionRate.maybeEvaluate(ctx.channel(), keepAlive, now);
+        nextMoveNanos = now + motionRate.intervalNanos();
+        return pendingMove.getAndSet(NO_PENDING_MOVE);
+    }
+
+    private void flushDelayedMove() {
+        moveFlushScheduled = false;
+        drain();
+    }
+
+    private void writeMove(int x, int y) {
+        if (binary) {
+            ByteBuf buf = ctx.alloc().ioBuffer(MOUSE_MOVE_FRAME_MAX);
+            ControlEventCodec.encodeMouseMove(buf, x, y);
+            ctx.write(buf, ctx.voidPromise());
+        } else {
+            // 旧版本客户端只支持JSON，仍通过ControlEvent编码
+            ctx.write(new ControlEvent(clientIp, ControlEventType.MouseMoved.name(), x, y), ctx.voidPromise());
+        }
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static int unpackX(long move) {
+        return (int) (move >> 32);
+    }
+
+    private static int unpackY(long move) {
+        return (int) move;
+    }
+
+    private static boolean isMouseMove(ControlEvent event) {
+        return ControlEventType.MouseMoved.name().equals(event.getType());
+    }
+
+    private static boolean isPositionedMouseEvent(ControlEvent event) {
+        String type = event.getType();
+        return ControlEventType.MousePressed.name().equals(type)
+                || ControlEventType.MouseReleased.name().equals(type)
+                || ControlEventType.MouseWheel.name().equals(type);
+    }
+
+    /**
+     * 获取被合并掉的鼠标移动事件数量
+     */
+    public long getCoalescedMoveCount() {
+        return coalescedMoves.sum();
+    }
+
+    /**
+     * 获取连接不可写时丢弃的鼠标移动数量
+     */
+    public long getShedMoveCount() {
+        return shedMoves.sum();
+    }
+
+    /**
+     * 获取超出写缓冲预算而丢弃的其它事件数量
+     */
+    public long getShedEventCount() {
+        return shedEvents.sum();
+    }
+
+    /**
+     * 获取会话重置次数
+     */
+    public long getResetCount() {
+        return resets.sum();
+    }
+
+    /**
+     * 关闭会话，可在任意线程调用；队列只有EventLoop一个消费者，清理交给EventLoop执行
+     */
+    public void close() {
+        logger.debug("关闭客户端 {} 的控制会话", clientIp);
+        EventLoop eventLoop = ctx.channel().eventLoop();
+        if (eventLoop.inEventLoop()) {
+            closeInEventLoop();
+            return;
+        }
+        try {
+            eventLoop.execute(this::closeInEventLoop);
+        } catch (RejectedExecutionException e) {
+            // EventLoop已关闭，通道随之关闭，队列不会再被消费
+            ctx.close();
+        }
+    }
+
+    private void closeInEventLoop() {
+        outbound.clear();
+        pendingMove.set(NO_PENDING_MOVE);
+        heldMove = NO_PENDING_MOVE;
+        if (keepAlive != null) {
+            keepAlive.stop();
+        }
+        closeMotionChannel();
+        ctx.close();
+    }
+}
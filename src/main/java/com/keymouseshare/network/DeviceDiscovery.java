@@ -1,57 +1,180 @@
 package com.keymouseshare.network;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.keymouseshare.bean.*;
 import com.keymouseshare.listener.DeviceListener;
+import com.keymouseshare.listener.NetworkAddressListener;
 import com.keymouseshare.storage.DeviceStorage;
+import com.keymouseshare.util.AppRuntime;
 import com.keymouseshare.util.DeviceTools;
 import com.keymouseshare.util.NetUtil;
+import com.keymouseshare.util.PhiAccrualFailureDetector;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.AddressedEnvelope;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultAddressedEnvelope;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.util.Timeout;
 import javafx.application.Platform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.net.*;
-import java.nio.charset.StandardCharsets;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
  * UDP网络发现模块，用于发现局域网内的设备及其屏幕信息，并提供设备控制请求功能。
+ * <p>
+ * 基于Netty DatagramChannel实现，收包使用池化缓冲区，解码由 {@link DiscoveryMessageCodec} 完成。
+ * 消息处理、心跳广播和离线清理都运行在该通道所属的共享EventLoop上，不再占用专门的接收线程。
  */
 public class DeviceDiscovery {
     private static final Logger logger = LoggerFactory.getLogger(DeviceDiscovery.class);
 
     // UDP广播端口
     private static final int DISCOVERY_PORT = 8888;
-    // 设备信息过期时间(毫秒)
+    // 单个UDP报文的最大接收长度
+    private static final int MAX_PACKET_SIZE = 4096;
+    // 设备信息过期时间(毫秒)，故障检测器判定失联的上限
     private static final long DEVICE_TIMEOUT = 30000; // 30秒
-
-    private DatagramSocket socket;
-    private ScheduledExecutorService scheduler;
+    // 心跳故障检测参数：判定阈值、样本数、标准差下限、可容忍停顿(允许丢失一次心跳)、初始心跳间隔
+    private static final double PHI_THRESHOLD = 8.0;
+    private static final int PHI_SAMPLE_SIZE = 100;
+    private static final long PHI_MIN_STD_DEVIATION = 500;
+    private static final long PHI_ACCEPTABLE_PAUSE = 3000;
+    private static final long HEARTBEAT_INTERVAL = 3000;
+    // 布局未变化时每隔多少次心跳补发一次完整心跳，避免漏收或旧版本节点因超时把本机判为离线
+    private static final int FULL_HEARTBEAT_EVERY = 8;
+    // 向同一设备重复请求布局的最小间隔(毫秒)
+    private static final long LAYOUT_REQUEST_INTERVAL = 1000;
+    // 回复启动探测的最大随机延时(毫秒)，避免所有节点同时回复
+    private static final int PROBE_REPLY_JITTER = 150;
+    // 发出启动探测后统计设备列表的等待时间(毫秒)
+    private static final long PROBE_SETTLE_TIME = 500;
+
+    private final Channel channel;
+    // 定时任务与消息处理运行在同一个EventLoop上
+    private final List<ScheduledFuture<?>> scheduledTasks = new ArrayList<>();
     private DeviceListener listener;
-    private Gson gson = new Gson();
-    private String localBroadcastAddress;
-    private String localIpAddress;
+    // 本机地址与广播目标，地址变化时在EventLoop中更新
+    private volatile String localBroadcastAddress;
+    private volatile String localIpAddress;
+    private volatile InetSocketAddress broadcastTarget;
+    private final NetworkAddressListener addressListener = this::onLocalAddressChanged;
+
+    // 以下状态只在通道所属的EventLoop中访问
+    private boolean layoutAnnounced = false;
+    private int announcedLayoutVersion;
+    private int heartbeatsSinceFull = 0;
+    // 已发出布局请求的设备及请求时间
+    private final Map<String, Long> layoutRequests = new HashMap<>();
+    // 各设备在时间轮中的离线判断任务
+    private final Map<String, Timeout> expiryTimeouts = new HashMap<>();
+    // 各远程设备心跳到达间隔的故障检测器，可在其它线程读取可疑程度
+    private final Map<String, PhiAccrualFailureDetector> detectors = new ConcurrentHashMap<>();
+    // 启动探测发出时间与探测后最后一次发现新设备的时间，0表示未探测
+    private long probeSentNanos = 0;
+    private long lastDiscoveredNanos = 0;
+    private int probeDiscoveredCount = 0;
 
     /**
      * 构造函数
      */
     public DeviceDiscovery() throws SocketException {
         logger.debug("正在初始化DeviceDiscovery...");
-        this.socket = new DatagramSocket(DISCOVERY_PORT);
-        this.socket.setBroadcast(true);
         this.localIpAddress = NetUtil.getLocalIpAddress();
         this.localBroadcastAddress = NetUtil.getLocalBroadcastAddress();
+        this.broadcastTarget = new InetSocketAddress(localBroadcastAddress, DISCOVERY_PORT);
+        this.channel = bind();
         logger.info("DeviceDiscovery初始化完成，本地IP: {}，广播地址: {}", localIpAddress, localBroadcastAddress);
 
         DeviceStorage.getInstance().setDiscoveryDevice(new DeviceInfo(this.localIpAddress, System.getProperty("os.name"), DeviceTools.getLocalScreens(), DeviceType.CLIENT.name(), ConnectType.DISCONNECTED.name()));
         logger.debug("本地设备信息已设置到DeviceStorage");
+        NetUtil.addAddressListener(addressListener);
+    }
+
+    /**
+     * 本机地址变化，转到EventLoop中处理
+     */
+    private void onLocalAddressChanged(String oldIpAddress, String newIpAddress, String broadcastAddress) {
+        if (channel.isOpen()) {
+            channel.eventLoop().execute(() -> applyLocalAddress(oldIpAddress, newIpAddress, broadcastAddress));
+        }
+    }
+
+    /**
+     * 本机设备改用新IP，广播目标改为新的广播地址，并立即广播完整心跳让其他节点得知新地址；
+     * 发现端口绑定在通配地址上，不需要重新绑定。旧IP在其他节点上按心跳超时离线。
+     */
+    private void applyLocalAddress(String oldIpAddress, String newIpAddress, String broadcastAddress) {
+        localIpAddress = newIpAddress;
+        localBroadcastAddress = broadcastAddress;
+        broadcastTarget = new InetSocketAddress(broadcastAddress, DISCOVERY_PORT);
+        // 新IP此前若属于其他设备，其离线判断不能作用到本机设备上
+        Timeout expiry = expiryTimeouts.remove(newIpAddress);
+        if (expiry != null) {
+            expiry.cancel();
+        }
+        detectors.remove(newIpAddress);
+        layoutRequests.remove(newIpAddress);
+        DeviceInfo localDevice = DeviceStorage.getInstance().rekeyLocalDevice(oldIpAddress, newIpAddress);
+        logger.info("本机地址已更新为 {}，广播地址: {}", newIpAddress, broadcastAddress);
+        if (localDevice == null) {
+            return;
+        }
+        layoutAnnounced = false;
+        try {
+            sendDeviceHeartBeatBroadcast();
+        } catch (IOException e) {
+            logger.error("地址变化后发送设备心跳失败: {}", e.getMessage(), e);
+        }
+        if (listener != null) {
+            listener.onDeviceUpdate(localDevice);
+        }
+    }
+
+    /**
+     * 绑定发现端口，失败时与原DatagramSocket一样抛出SocketException
+     */
+    private Channel bind() throws SocketException {
+        Bootstrap bootstrap = new Bootstrap()
+                .group(AppRuntime.getInstance().ioGroup())
+                .channel(TransportSelector.datagramChannelClass())
+                .option(ChannelOption.SO_BROADCAST, true)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(MAX_PACKET_SIZE))
+                .handler(new ChannelInitializer<DatagramChannel>() {
+                    @Override
+                    protected void initChannel(DatagramChannel ch) {
+                        ch.pipeline()
+                                .addLast(new DiscoveryMessageCodec())
+                                .addLast(new DiscoveryHandler());
+                    }
+                });
+        ChannelFuture future = bootstrap.bind(DISCOVERY_PORT).awaitUninterruptibly();
+        if (!future.isSuccess()) {
+            Throwable cause = future.cause();
+            if (cause instanceof SocketException) {
+                throw (SocketException) cause;
+            }
+            SocketException exception = new SocketException("无法绑定发现端口 " + DISCOVERY_PORT + ": " + cause.getMessage());
+            exception.initCause(cause);
+            throw exception;
+        }
+        return future.channel();
     }
 
     /**
@@ -69,15 +192,11 @@ public class DeviceDiscovery {
      */
     public void startDiscovery() {
         logger.info("正在启动设备发现服务...");
-        // 启动接收线程
-        startReceiverThread();
-
+        // 通道绑定后即开始接收消息，立即广播启动探测
+        channel.eventLoop().execute(this::sendDiscoveryProbe);
         // 启动定时广播线程
         startBroadcastThread();
 
-        // 启动设备清理线程
-        startDeviceCleanupThread();
-
         logger.info("设备发现服务已启动，本地IP: {}，广播地址: {}", localIpAddress, localBroadcastAddress);
         // 打印本机信息
         DeviceStorage.getInstance().printLocalDevices();
@@ -88,58 +207,29 @@ public class DeviceDiscovery {
      */
     public void stopDiscovery() {
         logger.info("正在停止设备发现服务...");
-        if (scheduler != null) {
-            scheduler.shutdown();
-            logger.debug("调度器已关闭");
+        NetUtil.removeAddressListener(addressListener);
+        for (ScheduledFuture<?> task : scheduledTasks) {
+            task.cancel(false);
         }
+        scheduledTasks.clear();
+        channel.eventLoop().execute(this::cancelExpiries);
+        logger.debug("定时任务已取消");
 
-        if (socket != null && !socket.isClosed()) {
-            socket.close();
-            logger.debug("UDP套接字已关闭");
+        if (channel.isOpen()) {
+            channel.close();
+            logger.debug("UDP通道已关闭");
         }
 
         logger.info("设备发现服务已停止");
     }
 
-    /**
-     * 启动接收线程
-     */
-    private void startReceiverThread() {
-        logger.debug("正在启动接收线程...");
-        Thread receiverThread = new Thread(() -> {
-            logger.debug("接收线程已启动");
-            byte[] buffer = new byte[4096];
-            while (!socket.isClosed()) {
-                try {
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                    socket.receive(packet);
-
-                    String message = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
-                    logger.debug("接收到UDP数据包，来自: {}:{}", packet.getAddress().getHostAddress(), packet.getPort());
-                    handleMessage(message, packet.getAddress().getHostAddress());
-                } catch (IOException e) {
-                    if (!socket.isClosed()) {
-                        logger.error("接收广播时出错: {}", e.getMessage(), e);
-                    }
-                }
-            }
-            logger.debug("接收线程已结束");
-        });
-        receiverThread.setDaemon(true);
-        receiverThread.start();
-        logger.debug("接收线程已启动为守护线程");
-    }
-
     /**
      * 启动广播线程
      */
     private void startBroadcastThread() {
         logger.debug("正在启动广播线程...");
-        scheduler = Executors.newScheduledThreadPool(1);
-        logger.debug("调度器已创建");
-
         // 每3秒发送一次心跳广播
-        scheduler.scheduleAtFixedRate(() -> {
+        scheduledTasks.add(channel.eventLoop().scheduleAtFixedRate(() -> {
             try {
                 logger.debug("发送设备心跳广播...");
                 sendDeviceHeartBeatBroadcast();
@@ -147,78 +237,226 @@ public class DeviceDiscovery {
             } catch (IOException e) {
                 logger.error("发送设备心跳广播失败: {}", e.getMessage(), e);
             }
-        }, 5, 3, TimeUnit.SECONDS);
+        }, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS));
         logger.debug("广播线程调度已设置");
 
     }
 
     /**
      * 发送设备心跳
+     * 布局版本号变化时广播完整心跳，其余时候只广播精简心跳
      */
     private void sendDeviceHeartBeatBroadcast() throws IOException {
         logger.debug("准备发送设备心跳广播");
-        DiscoveryMessage message = new DiscoveryMessage(MessageType.DEVICE_HEARTBEAT, DeviceStorage.getInstance().getLocalDevice()); // 使用本地设备的屏幕信息
-        String jsonMessage = gson.toJson(message);
-        logger.debug("心跳消息: {}", jsonMessage);
-        byte[] buffer = jsonMessage.getBytes(StandardCharsets.UTF_8);
-
-        InetAddress broadcastAddress = InetAddress.getByName(localBroadcastAddress);
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, broadcastAddress, DISCOVERY_PORT);
-        socket.send(packet);
+        DeviceInfo localDevice = DeviceStorage.getInstance().getLocalDevice();
+        int layoutVersion = localDevice.computeLayoutVersion();
+        localDevice.setLayoutVersion(layoutVersion);
+        if (!layoutAnnounced || layoutVersion != announcedLayoutVersion || ++heartbeatsSinceFull >= FULL_HEARTBEAT_EVERY) {
+            DiscoveryMessage message = new DiscoveryMessage(MessageType.DEVICE_HEARTBEAT, localDevice); // 使用本地设备的屏幕信息
+            send(message, broadcastTarget, "设备心跳广播");
+            layoutAnnounced = true;
+            announcedLayoutVersion = layoutVersion;
+            heartbeatsSinceFull = 0;
+        } else {
+            DiscoveryMessage message = new DiscoveryMessage(MessageType.DEVICE_HEARTBEAT_LITE, new DeviceHeartbeat(localDevice));
+            send(message, broadcastTarget, "精简心跳广播");
+        }
         logger.debug("设备心跳广播已发送到 {}:{}", localBroadcastAddress, DISCOVERY_PORT);
     }
 
+    /**
+     * 广播启动探测，携带本机完整信息，各节点随机延时后单播回复完整心跳
+     */
+    private void sendDiscoveryProbe() {
+        DeviceInfo localDevice = DeviceStorage.getInstance().getLocalDevice();
+        localDevice.setLayoutVersion(localDevice.computeLayoutVersion());
+        try {
+            probeSentNanos = System.nanoTime();
+            lastDiscoveredNanos = probeSentNanos;
+            probeDiscoveredCount = 0;
+            send(new DiscoveryMessage(MessageType.DISCOVERY_PROBE, localDevice), broadcastTarget, "启动探测");
+            logger.info("启动探测已广播");
+        } catch (IOException e) {
+            logger.error("发送启动探测失败: {}", e.getMessage(), e);
+            return;
+        }
+        channel.eventLoop().schedule(this::reportProbeResult, PROBE_SETTLE_TIME, TimeUnit.MILLISECONDS);
+    }
 
     /**
-     * 启动设备清理线程
+     * 输出启动探测后得到完整设备列表的耗时
      */
-    private void startDeviceCleanupThread() {
-        logger.debug("正在启动设备清理线程...");
-        scheduler.scheduleAtFixedRate(() -> {
-            logger.debug("执行设备清理任务");
-            long currentTime = System.currentTimeMillis();
-            Iterator<Map.Entry<String, DeviceInfo>> iterator = DeviceStorage.getInstance().getDiscoveredDevices().entrySet().iterator();
-
-            int removedCount = 0;
-            while (iterator.hasNext()) {
-                Map.Entry<String, DeviceInfo> entry = iterator.next();
-                DeviceInfo device = entry.getValue();
-
-                // 如果设备超过30秒没有响应，则认为设备已离线
-                // 但不要清理本地设备
-                if (!device.getIpAddress().equals(localIpAddress) && currentTime - device.getLastSeen() > DEVICE_TIMEOUT) {
-                    logger.info("设备 {} 已离线，最后在线时间: {}", device.getIpAddress(), device.getLastSeen());
-                    DeviceStorage.getInstance().removeDiscoveryDevice(device.getIpAddress());
-                    listener.onDeviceLost(device);
-                    removedCount++;
-                }
+    private void reportProbeResult() {
+        DeviceInfo serverDevice = DeviceStorage.getInstance().getSeverDevice();
+        logger.info("启动探测完成，发现 {} 台设备，设备列表完整耗时 {} ms，当前控制端: {}",
+                probeDiscoveredCount,
+                (lastDiscoveredNanos - probeSentNanos) / 1_000_000,
+                serverDevice != null ? serverDevice.getIpAddress() : "无");
+        probeSentNanos = 0;
+    }
+
+    /**
+     * 处理启动探测：记录探测方信息，随机延时后单播回复本机完整心跳
+     */
+    private void handleDiscoveryProbe(DiscoveryMessage discoveryMessage, String senderAddress) {
+        handleDeviceHeartBeat(discoveryMessage);
+        long delay = ThreadLocalRandom.current().nextInt(PROBE_REPLY_JITTER + 1);
+        channel.eventLoop().schedule(() -> {
+            try {
+                sendLayout(senderAddress);
+            } catch (IOException e) {
+                logger.error("回复启动探测失败: {}", e.getMessage());
             }
-            if (removedCount > 0) {
-                logger.debug("本次清理任务共移除 {} 个离线设备", removedCount);
-            } else {
-                logger.debug("本次清理任务未发现离线设备");
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 向请求方单播完整心跳
+     *
+     * @param targetIpAddress 请求方IP地址
+     */
+    private void sendLayout(String targetIpAddress) throws IOException {
+        DeviceInfo localDevice = DeviceStorage.getInstance().getLocalDevice();
+        localDevice.setLayoutVersion(localDevice.computeLayoutVersion());
+        DiscoveryMessage message = new DiscoveryMessage(MessageType.DEVICE_HEARTBEAT, localDevice);
+        send(message, new InetSocketAddress(targetIpAddress, DISCOVERY_PORT), "完整心跳");
+        logger.debug("完整心跳已发送到 {}", targetIpAddress);
+    }
+
+    /**
+     * 请求设备回复完整心跳，同一设备在请求间隔内只请求一次
+     *
+     * @param targetIpAddress 目标设备IP地址
+     */
+    private void requestLayout(String targetIpAddress) throws IOException {
+        long now = System.currentTimeMillis();
+        Long lastRequest = layoutRequests.get(targetIpAddress);
+        if (lastRequest != null && now - lastRequest < LAYOUT_REQUEST_INTERVAL) {
+            return;
+        }
+        layoutRequests.values().removeIf(requestTime -> now - requestTime > DEVICE_TIMEOUT);
+        layoutRequests.put(targetIpAddress, now);
+        send(new DiscoveryMessage(MessageType.LAYOUT_REQUEST), new InetSocketAddress(targetIpAddress, DISCOVERY_PORT), "布局请求");
+        logger.debug("已向 {} 请求布局", targetIpAddress);
+    }
+
+
+    /**
+     * 为设备登记离线判断
+     * 到期时间取故障检测器phi达到阈值的时间，且不晚于最后在线时间加超时时间；心跳只刷新检测器和最后在线时间，
+     * 到期时若期间收到过心跳则按剩余时间顺延，因此时间轮中每个设备只有一个任务，只有真正离线的设备才会被处理。
+     * 只在EventLoop中调用。
+     *
+     * @param device 设备信息
+     */
+    private void trackExpiry(DeviceInfo device) {
+        String ipAddress = device.getIpAddress();
+        if (ipAddress.equals(localIpAddress) || expiryTimeouts.containsKey(ipAddress)) {
+            return;
+        }
+        scheduleExpiry(ipAddress, millisUntilExpiry(device));
+    }
+
+    /**
+     * 记录收到设备的消息：刷新最后在线时间，并把到达时间交给该设备的故障检测器
+     */
+    private void markSeen(DeviceInfo device) {
+        device.setLastSeen(System.currentTimeMillis());
+        if (!device.getIpAddress().equals(localIpAddress)) {
+            detectors.computeIfAbsent(device.getIpAddress(), ip -> new PhiAccrualFailureDetector(
+                    PHI_THRESHOLD, PHI_SAMPLE_SIZE, PHI_MIN_STD_DEVIATION, PHI_ACCEPTABLE_PAUSE, HEARTBEAT_INTERVAL))
+                    .heartbeat();
+        }
+    }
+
+    /**
+     * 距离判定设备失联还有多少毫秒
+     */
+    private long millisUntilExpiry(DeviceInfo device) {
+        long remaining = device.getLastSeen() + DEVICE_TIMEOUT - System.currentTimeMillis();
+        PhiAccrualFailureDetector detector = detectors.get(device.getIpAddress());
+        if (detector != null) {
+            remaining = Math.min(remaining, detector.millisUntilSuspect());
+        }
+        return remaining;
+    }
+
+    /**
+     * 获取远程设备当前的可疑程度phi，未知设备返回0
+     *
+     * @param ipAddress 设备IP地址
+     */
+    public double getSuspicion(String ipAddress) {
+        PhiAccrualFailureDetector detector = detectors.get(ipAddress);
+        return detector != null ? detector.phi() : 0;
+    }
+
+    private void scheduleExpiry(String ipAddress, long delayMillis) {
+        Timeout timeout = AppRuntime.getInstance().wheelTimer().newTimeout(
+                t -> channel.eventLoop().execute(() -> checkExpiry(ipAddress)),
+                delayMillis, TimeUnit.MILLISECONDS);
+        expiryTimeouts.put(ipAddress, timeout);
+    }
+
+    /**
+     * 设备的离线判断到期，在EventLoop中执行
+     */
+    private void checkExpiry(String ipAddress) {
+        expiryTimeouts.remove(ipAddress);
+        if (!channel.isOpen()) {
+            return;
+        }
+        DeviceInfo device = DeviceStorage.getInstance().getDevice(ipAddress);
+        if (device == null) {
+            return;
+        }
+        long remaining = millisUntilExpiry(device);
+        if (remaining > 0) {
+            scheduleExpiry(ipAddress, remaining);
+            return;
+        }
+        // 心跳中断超出该设备正常抖动范围(最长30秒)，则认为设备已离线
+        logger.info("设备 {} 已离线，最后在线时间: {}，phi: {}", ipAddress, device.getLastSeen(), String.format("%.1f", getSuspicion(ipAddress)));
+        DeviceStorage.getInstance().removeDiscoveryDevice(ipAddress);
+        detectors.remove(ipAddress);
+        layoutRequests.remove(ipAddress);
+        listener.onDeviceLost(device);
+    }
+
+    private void cancelExpiries() {
+        expiryTimeouts.values().forEach(Timeout::cancel);
+        expiryTimeouts.clear();
+    }
+
+    /**
+     * 发现通道的入站处理器，在通道所属的EventLoop中执行
+     */
+    private class DiscoveryHandler extends SimpleChannelInboundHandler<AddressedEnvelope<DiscoveryMessage, InetSocketAddress>> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, AddressedEnvelope<DiscoveryMessage, InetSocketAddress> envelope) {
+            String senderAddress = envelope.sender().getAddress().getHostAddress();
+            logger.debug("接收到UDP数据包，来自: {}:{}", senderAddress, envelope.sender().getPort());
+            handleMessage(envelope.content(), senderAddress);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            // UDP通道出错不关闭，继续接收后续报文
+            if (channel.isOpen()) {
+                logger.error("接收广播时出错: {}", cause.getMessage(), cause);
             }
-        }, 10, 10, TimeUnit.SECONDS);
-        logger.debug("设备清理线程调度已设置");
+        }
     }
 
     /**
      * 处理接收到的消息
      *
-     * @param message       消息内容
-     * @param senderAddress 发送方地址
+     * @param discoveryMessage 已解码的消息
+     * @param senderAddress    发送方地址
      */
-    private void handleMessage(String message, String senderAddress) {
-        logger.debug("处理来自 {} 的消息: {}", senderAddress, message);
-        Type messageType = new TypeToken<DiscoveryMessage>() {
-        }.getType();
-        DiscoveryMessage discoveryMessage = gson.fromJson(message, messageType);
+    private void handleMessage(DiscoveryMessage discoveryMessage, String senderAddress) {
+        logger.debug("处理来自 {} 的消息: {}", senderAddress, discoveryMessage.getType());
         try {
-            if (discoveryMessage == null) {
-                logger.warn("无法解析消息内容: {}", message);
-                return;
-            }
-
             switch (discoveryMessage.getType()) {
 
                 case DEVICE_HEARTBEAT:
@@ -226,6 +464,27 @@ public class DeviceDiscovery {
                     handleDeviceHeartBeat(discoveryMessage);
                     break;
 
+                case DEVICE_HEARTBEAT_LITE:
+                    logger.debug("处理精简心跳消息");
+                    handleDeviceHeartBeatLite(discoveryMessage.getHeartbeat());
+                    break;
+
+                case DISCOVERY_PROBE:
+                    logger.debug("处理启动探测消息");
+                    if (senderAddress.equals(localIpAddress)) {
+                        return;
+                    }
+                    handleDiscoveryProbe(discoveryMessage, senderAddress);
+                    break;
+
+                case LAYOUT_REQUEST:
+                    logger.debug("处理布局请求消息");
+                    if (senderAddress.equals(localIpAddress)) {
+                        return;
+                    }
+                    sendLayout(senderAddress);
+                    break;
+
                 case SERVER_START:
                     logger.debug("处理服务器启动消息");
                     // 添加设备到列表
@@ -263,20 +522,72 @@ public class DeviceDiscovery {
     private void handleDeviceHeartBeat(DiscoveryMessage discoveryMessage) {
         logger.debug("处理设备心跳: {}", discoveryMessage.getDeviceInfo());
         DeviceInfo device = discoveryMessage.getDeviceInfo();
+        layoutRequests.remove(device.getIpAddress());
+        DeviceInfo existing = DeviceStorage.getInstance().getDevice(device.getIpAddress());
+        // 布局版本未变化时原地更新，版本号为0的是旧版本节点，总是整体替换
+        if (existing != null && device.getLayoutVersion() != 0 && existing.getLayoutVersion() == device.getLayoutVersion()) {
+            if (updateInPlace(existing, device.getDeviceType(), device.getConnectionStatus())) {
+                listener.onDeviceUpdate(existing);
+            }
+            return;
+        }
+        if (existing == null && probeSentNanos != 0) {
+            lastDiscoveredNanos = System.nanoTime();
+            probeDiscoveredCount++;
+        }
         // 更新设备的最后_seen时间
-        device.setLastSeen(System.currentTimeMillis());
+        markSeen(device);
         DeviceStorage.getInstance().setDiscoveryDevice(device);
+        trackExpiry(device);
         listener.onDeviceUpdate(device);
         logger.debug("设备心跳处理完成: {}", device.getIpAddress());
     }
 
+    /**
+     * 处理精简心跳，未知设备或布局版本变化时向对方请求完整心跳
+     *
+     * @param heartbeat 精简心跳
+     */
+    private void handleDeviceHeartBeatLite(DeviceHeartbeat heartbeat) throws IOException {
+        if (heartbeat == null || heartbeat.getIpAddress() == null) {
+            return;
+        }
+        DeviceInfo existing = DeviceStorage.getInstance().getDevice(heartbeat.getIpAddress());
+        if (existing != null && updateInPlace(existing, heartbeat.getDeviceType(), heartbeat.getConnectionStatus())) {
+            listener.onDeviceUpdate(existing);
+        }
+        if (existing == null || existing.getLayoutVersion() != heartbeat.getLayoutVersion()) {
+            requestLayout(heartbeat.getIpAddress());
+        }
+    }
+
+    /**
+     * 原地刷新设备的最后在线时间、角色和连接状态，本机设备只刷新在线时间
+     *
+     * @return 角色或连接状态是否变化
+     */
+    private boolean updateInPlace(DeviceInfo device, String deviceType, String connectionStatus) {
+        markSeen(device);
+        if (device.getIpAddress().equals(localIpAddress)) {
+            return false;
+        }
+        boolean changed = !Objects.equals(device.getDeviceType(), deviceType)
+                || !Objects.equals(device.getConnectionStatus(), connectionStatus);
+        if (changed) {
+            DeviceStorage.getInstance().setDeviceRole(device, deviceType, connectionStatus);
+        }
+        return changed;
+    }
+
     /**
      * 处理服务器启动消息
      */
     private void handleServerStart(DiscoveryMessage discoveryMessage) {
         logger.debug("处理服务器启动消息: {}", discoveryMessage.getDeviceInfo());
         DeviceInfo deviceServer = discoveryMessage.getDeviceInfo();
+        markSeen(deviceServer);
         DeviceStorage.getInstance().setDiscoveryDevice(deviceServer);
+        trackExpiry(deviceServer);
         if (listener != null) {
             listener.onServerStart();
             logger.debug("已通知监听器服务器启动");
@@ -289,10 +600,8 @@ public class DeviceDiscovery {
         DeviceInfo serviceDevice = DeviceStorage.getInstance().getSeverDevice();
         if (serviceDevice != null && serviceDevice.getIpAddress().equals(senderAddress)) {
             logger.debug("更新所有设备为客户端状态");
-            DeviceStorage.getInstance().getDiscoveredDevices().values().forEach(device -> {
-                device.setDeviceType(DeviceType.CLIENT.name());
-                device.setConnectionStatus(ConnectType.DISCONNECTED.name());
-            });
+            DeviceStorage.getInstance().getDiscoveredDevices().values().forEach(device ->
+                    DeviceStorage.getInstance().setDeviceRole(device, DeviceType.CLIENT.name(), ConnectType.DISCONNECTED.name()));
         }
         // 在JavaFX线程中显示权限对话框
         listener.onServerClose();
@@ -321,12 +630,8 @@ public class DeviceDiscovery {
     public void sendControlRequest(String targetIpAddress) throws IOException {
         logger.info("发送控制请求到目标设备: {}", targetIpAddress);
         DiscoveryMessage message = new DiscoveryMessage(MessageType.CONTROL_REQUEST);
-        String jsonMessage = gson.toJson(message);
-        byte[] buffer = jsonMessage.getBytes(StandardCharsets.UTF_8);
-
         InetAddress targetAddress = InetAddress.getByName(targetIpAddress);
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, targetAddress, DISCOVERY_PORT);
-        socket.send(packet);
+        send(message, new InetSocketAddress(targetAddress, DISCOVERY_PORT), "控制请求");
         logger.debug("控制请求已发送到 {}:{}", targetIpAddress, DISCOVERY_PORT);
     }
 
@@ -338,16 +643,10 @@ public class DeviceDiscovery {
     public void sendServerStartBroadcast() throws IOException {
         logger.info("发送服务器启动广播");
         DeviceInfo localDevice = DeviceStorage.getInstance().getLocalDevice();
-        localDevice.setDeviceType(DeviceType.SERVER.name());
-        localDevice.setConnectionStatus(ConnectType.CONNECTED.name());
+        DeviceStorage.getInstance().setDeviceRole(localDevice, DeviceType.SERVER.name(), ConnectType.CONNECTED.name());
         DeviceStorage.getInstance().setDiscoveryDevice(localDevice);
         DiscoveryMessage message = new DiscoveryMessage(MessageType.SERVER_START, localDevice); // 使用本地设备的屏幕信息
-        String jsonMessage = gson.toJson(message);
-        byte[] buffer = jsonMessage.getBytes(StandardCharsets.UTF_8);
-
-        InetAddress broadcastAddress = InetAddress.getByName(localBroadcastAddress);
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, broadcastAddress, DISCOVERY_PORT);
-        socket.send(packet);
+        send(message, broadcastTarget, "服务器启动广播");
         logger.debug("服务器启动广播已发送到 {}:{}", localBroadcastAddress, DISCOVERY_PORT);
     }
 
@@ -359,13 +658,26 @@ public class DeviceDiscovery {
     public void sendServerCloseBroadcast() throws IOException {
         logger.info("发送服务器关闭广播");
         DiscoveryMessage message = new DiscoveryMessage(MessageType.SERVER_STOP); // 使用本地设备的屏幕信息
-        String jsonMessage = gson.toJson(message);
-        byte[] buffer = jsonMessage.getBytes(StandardCharsets.UTF_8);
-
-        InetAddress broadcastAddress = InetAddress.getByName(localBroadcastAddress);
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, broadcastAddress, DISCOVERY_PORT);
-        socket.send(packet);
+        send(message, broadcastTarget, "服务器关闭广播");
         logger.debug("服务器关闭广播已发送到 {}:{}", localBroadcastAddress, DISCOVERY_PORT);
     }
 
-}
\ No newline at end of file
+    /**
+     * 发送发现消息，可在任意线程调用；编码和写出在通道所属的EventLoop中完成
+     *
+     * @param message     消息
+     * @param target      目标地址
+     * @param description 消息说明，用于日志
+     */
+    private void send(DiscoveryMessage message, InetSocketAddress target, String description) throws IOException {
+        if (!channel.isActive()) {
+            throw new SocketException("发现通道已关闭");
+        }
+        channel.writeAndFlush(new DefaultAddressedEnvelope<>(message, target)).addListener(future -> {
+            if (!future.isSuccess()) {
+                logger.error("发送{}失败: {}", description, future.cause().getMessage());
+            }
+        });
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.keymouseshare.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.keymouseshare.bean.DiscoveryMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.AddressedEnvelope;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultAddressedEnvelope;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.MessageToMessageCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 设备发现报文编解码器
+ * <p>
+ * 收到的UDP报文直接从池化ByteBuf流式解析为DiscoveryMessage，不再复制成byte[]和String；
+ * 发送时把JSON直接写入池化ByteBuf。无法解析的报文记录日志后丢弃。
+ */
+@ChannelHandler.Sharable
+public class DiscoveryMessageCodec extends MessageToMessageCodec<DatagramPacket, AddressedEnvelope<DiscoveryMessage, InetSocketAddress>> {
+    private static final Logger logger = LoggerFactory.getLogger(DiscoveryMessageCodec.class);
+
+    private final Gson gson = new Gson();
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, AddressedEnvelope<DiscoveryMessage, InetSocketAddress> envelope, List<Object> out) throws Exception {
+        ByteBuf buf = ctx.alloc().ioBuffer();
+        try (Writer writer = new OutputStreamWriter(new ByteBufOutputStream(buf), StandardCharsets.UTF_8)) {
+            gson.toJson(envelope.content(), writer);
+        } catch (Exception e) {
+            buf.release();
+            throw e;
+        }
+        out.add(new DatagramPacket(buf, envelope.recipient()));
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, DatagramPacket packet, List<Object> out) {
+        ByteBuf content = packet.content();
+        DiscoveryMessage message;
+        try (Reader reader = new InputStreamReader(new ByteBufInputStream(content), StandardCharsets.UTF_8)) {
+            message = gson.fromJson(reader, DiscoveryMessage.class);
+        } catch (JsonParseException | IOException e) {
+            logger.warn("无法解析来自 {} 的发现消息: {}", packet.sender(), e.getMessage());
+            return;
+        }
+        if (message == null || message.getType() == null) {
+            logger.warn("忽略来自 {} 的空发现消息", packet.sender());
+            return;
+        }
+        out.add(new DefaultAddressedEnvelope<>(message, packet.recipient(), packet.sender()));
+    }
+}
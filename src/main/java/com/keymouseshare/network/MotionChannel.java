@@ -0,0 +1,501 @@
+package com.keymouseshare.network;
+
+import com.keymouseshare.keyboard.MouseKeyBoardFactory;
+import com.keymouseshare.util.AppRuntime;
+import com.keymouseshare.util.LatencyRecorder;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 鼠标移动的UDP通道
+ * <p>
+ * 握手协商了udpmotion能力后，客户端绑定一个UDP端口并通过控制连接告知服务端，
+ * 服务端之后把鼠标绝对位置以带序号的数据报发送到该端口；按键、按钮、滚轮仍走TCP。
+ * 丢包不会阻塞后续移动，接收端丢弃序号不比已应用位置新的数据报。
+ * 按键等事件之前的最后一个位置仍通过TCP发送并携带同一序列的序号，保证按键落在正确位置，
+ * 之后迟到的旧数据报也会因序号过旧被丢弃。
+ * <p>
+ * 数据报格式：1字节标识 + 4字节序号 + 4字节x + 4字节y，之后可选1字节冗余个数N
+ * 和N组zigzag变长编码的差值，依次为序号seq-1、seq-2……的位置相对后一个位置的偏移。
+ * 接收端发现序号跳跃时用冗余位置补回丢失的中间轨迹，无需重传；只读前13字节的旧版本接收端不受影响。
+ * 冗余个数按客户端每秒上报的丢包率自适应，客户端也可用 -Dkeymouseshare.motion.redundancy=N 固定。
+ * 一段移动结束后服务端补发一次最后的数据报，避免最后一个位置丢失时光标停在半路。
+ * <p>
+ * -Dkeymouseshare.motion.loss=0.03 可在发送端模拟丢包，丢包序列由
+ * -Dkeymouseshare.motion.lossSeed 决定，恢复率与带宽开销在会话关闭时输出到日志。
+ * 尾部补发由定时器触发，真实链路上的结果不完全可重复；不同冗余个数的确定性对比见测试目录下的 MotionLossSimulator。
+ */
+public final class MotionChannel {
+    private static final Logger logger = LoggerFactory.getLogger(MotionChannel.class);
+
+    private static final byte MAGIC = 'M';
+    static final int PACKET_SIZE = 13;
+    // 冗余位置个数上限
+    static final int MAX_REDUNDANCY = 4;
+    // 一对差值的最大编码长度
+    private static final int MAX_DELTA_SIZE = 10;
+
+    // 发送端模拟丢包率，0表示不丢包
+    private static final double SIMULATED_LOSS = Double.parseDouble(System.getProperty("keymouseshare.motion.loss", "0"));
+    private static final long SIMULATED_LOSS_SEED = Long.getLong("keymouseshare.motion.lossSeed", 1L);
+
+    // 客户端要求的冗余个数，未设置时按丢包率自适应
+    private static final int REQUESTED_REDUNDANCY = Integer.getInteger("keymouseshare.motion.redundancy", -1);
+
+    // 移动停止多久后补发最后一个位置(毫秒)
+    private static final long TAIL_REPEAT_DELAY = 20;
+
+    private MotionChannel() {
+    }
+
+    /**
+     * 在指定EventLoop上创建连接到客户端运动端口的UDP通道，与控制连接同线程写出，不需要跨线程切换
+     */
+    static ChannelFuture connect(EventLoop eventLoop, InetSocketAddress target) {
+        return new Bootstrap()
+                .group(eventLoop)
+                .channel(TransportSelector.datagramChannelClass())
+                .handler(new ChannelInboundHandlerAdapter())
+                .connect(target);
+    }
+
+    /**
+     * 序号回绕时跳过0，0表示事件不属于UDP运动序列
+     */
+    static int nextSeq(int seq) {
+        int next = seq + 1;
+        return next == 0 ? 1 : next;
+    }
+
+    /**
+     * 客户端在MotionChannel事件的y字段中声明的冗余偏好：0表示自适应，N+1表示固定为N
+     */
+    static int localRedundancyPreference() {
+        return REQUESTED_REDUNDANCY < 0 ? 0 : Math.min(REQUESTED_REDUNDANCY, MAX_REDUNDANCY) + 1;
+    }
+
+    /**
+     * 按丢包率(千分比)选择冗余个数，无丢包时也保留一个冗余位置
+     */
+    static int redundancyFor(double lossPermille) {
+        if (lossPermille < 5) {
+            return 1;
+        }
+        if (lossPermille < 20) {
+            return 2;
+        }
+        if (lossPermille < 50) {
+            return 3;
+        }
+        return MAX_REDUNDANCY;
+    }
+
+    /**
+     * 接收端应用位置的方式
+     */
+    interface PositionSink {
+        void moveTo(int x, int y);
+    }
+
+    /**
+     * 服务端的运动数据发送端，只在控制连接所属的EventLoop中访问
+     */
+    static final class Sender {
+        private final Channel channel;
+        private final String clientIp;
+        // 客户端固定的冗余个数，-1表示自适应
+        private final int fixedRedundancy;
+        // 当前冗余个数，可在其他线程读取
+        private volatile int redundancy;
+        // 平滑后的丢包率(千分比)
+        private double smoothedLoss = 0;
+
+        private int seq = 0;
+        // 最近的位置，下标0为当前序号的位置，下标i为seq-i的位置
+        private final int[] historyX = new int[MAX_REDUNDANCY + 1];
+        private final int[] historyY = new int[MAX_REDUNDANCY + 1];
+        private int historySize = 0;
+
+        private long lastSendNanos;
+        private boolean tailScheduled = false;
+        private boolean tailPending = false;
+        private final Runnable tailTask = this::tailRepeat;
+
+        // 模拟丢包率与丢包序列
+        private final double simulatedLoss;
+        private final SplittableRandom lossRandom;
+
+        // 统计，数据报数不含模拟丢弃的部分
+        private long packets = 0;
+        private long droppedPackets = 0;
+        private long tailRepeats = 0;
+        private long bytes = 0;
+        private long redundantBytes = 0;
+
+        /**
+         * @param channel    已连接的UDP通道
+         * @param clientIp   客户端IP，用于日志
+         * @param preference 客户端声明的冗余偏好，见 {@link MotionChannel#localRedundancyPreference()}
+         */
+        Sender(Channel channel, String clientIp, int preference) {
+            this(channel, clientIp, preference, SIMULATED_LOSS, SIMULATED_LOSS_SEED);
+        }
+
+        /**
+         * @param simulatedLoss 模拟丢包率，0表示不丢包
+         * @param lossSeed      丢包序列的种子
+         */
+        Sender(Channel channel, String clientIp, int preference, double simulatedLoss, long lossSeed) {
+            this.channel = channel;
+            this.simulatedLoss = simulatedLoss;
+            this.lossRandom = new SplittableRandom(lossSeed);
+            this.clientIp = clientIp;
+            this.fixedRedundancy = preference > 0 ? Math.min(preference - 1, MAX_REDUNDANCY) : -1;
+            this.redundancy = fixedRedundancy >= 0 ? fixedRedundancy : redundancyFor(0);
+        }
+
+        boolean isActive() {
+            return channel.isActive();
+        }
+
+        int getRedundancy() {
+            return redundancy;
+        }
+
+        /**
+         * 为经TCP发送的位置分配序号，该位置同样记入历史，保证冗余差值与序号一一对应
+         */
+        int nextSeq(int x, int y) {
+            push(x, y);
+            // 该位置由TCP可靠送达，不必补发
+            tailPending = false;
+            return seq;
+        }
+
+        /**
+         * 以数据报发送一个位置
+         */
+        void send(int x, int y) {
+            push(x, y);
+            write();
+            lastSendNanos = System.nanoTime();
+            tailPending = redundancy > 0;
+            if (tailPending && !tailScheduled) {
+                tailScheduled = true;
+                channel.eventLoop().schedule(tailTask, TAIL_REPEAT_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * 客户端上报了最近一个周期的丢包率
+         */
+        void onLossReport(int lossPermille) {
+            smoothedLoss = smoothedLoss * 0.7 + lossPermille * 0.3;
+            if (fixedRedundancy >= 0) {
+                return;
+            }
+            int next = redundancyFor(smoothedLoss);
+            if (next != redundancy) {
+                logger.info("客户端 {} 运动通道丢包率约 {}‰，冗余位置个数 {} -> {}",
+                        clientIp, String.format("%.1f", smoothedLoss), redundancy, next);
+                redundancy = next;
+            }
+        }
+
+        private void push(int x, int y) {
+            seq = MotionChannel.nextSeq(seq);
+            System.arraycopy(historyX, 0, historyX, 1, MAX_REDUNDANCY);
+            System.arraycopy(historyY, 0, historyY, 1, MAX_REDUNDANCY);
+            historyX[0] = x;
+            historyY[0] = y;
+            historySize = Math.min(historySize + 1, MAX_REDUNDANCY + 1);
+        }
+
+        /**
+         * 移动停止后补发一次最后的数据报，接收端若已收到会按过期丢弃
+         */
+        private void tailRepeat() {
+            tailScheduled = false;
+            if (!tailPending || !channel.isActive()) {
+                return;
+            }
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(TAIL_REPEAT_DELAY) - (System.nanoTime() - lastSendNanos);
+            if (remainingNanos > 0) {
+                tailScheduled = true;
+                channel.eventLoop().schedule(tailTask, remainingNanos, TimeUnit.NANOSECONDS);
+                return;
+            }
+            repeatTail();
+        }
+
+        /**
+         * 立即补发最后的数据报，没有待补发的位置时不发送
+         */
+        void repeatTail() {
+            if (!tailPending) {
+                return;
+            }
+            tailPending = false;
+            tailRepeats++;
+            write();
+        }
+
+        private void write() {
+            int count = Math.min(redundancy, historySize - 1);
+            if (simulatedLoss > 0 && lossRandom.nextDouble() < simulatedLoss) {
+                droppedPackets++;
+                return;
+            }
+            ByteBuf buf = channel.alloc().ioBuffer(PACKET_SIZE + 1 + count * MAX_DELTA_SIZE);
+            buf.writeByte(MAGIC);
+            buf.writeInt(seq);
+            buf.writeInt(historyX[0]);
+            buf.writeInt(historyY[0]);
+            if (count > 0) {
+                buf.writeByte(count);
+                for (int i = 1; i <= count; i++) {
+                    ControlEventCodec.writeVarInt(buf, ControlEventCodec.zigZag(historyX[i - 1] - historyX[i]));
+                    ControlEventCodec.writeVarInt(buf, ControlEventCodec.zigZag(historyY[i - 1] - historyY[i]));
+                }
+            }
+            packets++;
+            bytes += buf.readableBytes();
+            redundantBytes += buf.readableBytes() - PACKET_SIZE;
+            channel.writeAndFlush(buf, channel.voidPromise());
+        }
+
+        /**
+         * 冗余字节相对于不带冗余时的带宽开销(百分比)
+         */
+        double bandwidthOverhead() {
+            return bytes > redundantBytes ? redundantBytes * 100.0 / (bytes - redundantBytes) : 0;
+        }
+
+        long getTailRepeatCount() {
+            return tailRepeats;
+        }
+
+        void close() {
+            channel.close();
+            long attempted = packets + droppedPackets;
+            logger.info("客户端 {} 运动通道已关闭，发送 {} 个数据报(补发 {} 个，模拟丢弃 {} 个)，冗余 {} 字节，带宽开销 {}%",
+                    clientIp, attempted, tailRepeats, droppedPackets, redundantBytes, String.format("%.1f", bandwidthOverhead()));
+        }
+    }
+
+    /**
+     * 客户端的运动数据接收端
+     */
+    public static final class Receiver {
+        private final InetAddress server;
+        // 位置的去向，默认交给本机注入流水线
+        private final PositionSink sink;
+
+        // 已应用的最新序号，UDP与TCP两条路径都会更新
+        private final AtomicInteger lastSeq = new AtomicInteger(0);
+        // UDP与TCP在不同的EventLoop上推进序号，推进与交给注入流水线须在同一把锁内完成，
+        // 否则序号已推进但尚未提交的旧位置可能排在之后序号更新的按键后面注入
+        private final Object applyLock = new Object();
+        private final LongAdder stalePackets = new LongAdder();
+        // 冗余位置也无法补回的位置数
+        private final LongAdder lostPackets = new LongAdder();
+        // 由冗余位置补回的位置数
+        private final LongAdder recoveredPackets = new LongAdder();
+        // 上报周期内的序号推进量与跳过量，用于计算原始丢包率
+        private final LongAdder windowExpected = new LongAdder();
+        private final LongAdder windowSkipped = new LongAdder();
+        // 相邻两次位置更新的间隔，丢包时该间隔变长
+        private final LatencyRecorder updateInterval = new LatencyRecorder("光标更新间隔", 1024, 2000);
+        private volatile long lastUpdateNanos = 0;
+
+        // 解码冗余位置的缓冲，只在UDP通道的EventLoop中访问
+        private final int[] recoveredX = new int[MAX_REDUNDANCY];
+        private final int[] recoveredY = new int[MAX_REDUNDANCY];
+
+        private volatile Channel channel;
+
+        Receiver(InetAddress server) {
+            this(server, MouseKeyBoardFactory.getFactory()::mouseMove);
+        }
+
+        Receiver(InetAddress server, PositionSink sink) {
+            this.server = server;
+            this.sink = sink;
+        }
+
+        /**
+         * 在共享IO线程组上绑定临时端口
+         */
+        ChannelFuture bind() {
+            ChannelFuture future = new Bootstrap()
+                    .group(AppRuntime.getInstance().ioGroup())
+                    .channel(TransportSelector.datagramChannelClass())
+                    .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                            onPacket(packet);
+                        }
+                    })
+                    .bind(0);
+            channel = future.channel();
+            return future;
+        }
+
+        int getPort() {
+            return ((InetSocketAddress) channel.localAddress()).getPort();
+        }
+
+        void onPacket(DatagramPacket packet) {
+            ByteBuf content = packet.content();
+            if (!packet.sender().getAddress().equals(server)
+                    || content.readableBytes() < PACKET_SIZE || content.getByte(content.readerIndex()) != MAGIC) {
+                return;
+            }
+            content.skipBytes(1);
+            int seq = content.readInt();
+            int x = content.readInt();
+            int y = content.readInt();
+            int count = 0;
+            try {
+                if (content.isReadable()) {
+                    count = Math.min(content.readUnsignedByte(), MAX_REDUNDANCY);
+                    int end = content.writerIndex();
+                    int previousX = x;
+                    int previousY = y;
+                    for (int i = 0; i < count; i++) {
+                        previousX -= ControlEventCodec.unZigZag(ControlEventCodec.readVarInt(content, end));
+                        previousY -= ControlEventCodec.unZigZag(ControlEventCodec.readVarInt(content, end));
+                        recoveredX[i] = previousX;
+                        recoveredY[i] = previousY;
+                    }
+                }
+            } catch (CorruptedFrameException e) {
+                logger.debug("运动数据报冗余部分不完整，只应用当前位置: {}", e.getMessage());
+                count = 0;
+            }
+            synchronized (applyLock) {
+                int gap = advance(seq, count);
+                if (gap <= 0) {
+                    return;
+                }
+                // 先按时间顺序补回丢失的中间轨迹，再应用当前位置
+                for (int i = Math.min(count, gap - 1) - 1; i >= 0; i--) {
+                    sink.moveTo(recoveredX[i], recoveredY[i]);
+                }
+                sink.moveTo(x, y);
+            }
+        }
+
+        /**
+         * 应用经TCP到达的带序号位置，序号不比已应用的位置新时丢弃
+         *
+         * @param seq 位置序号
+         * @param x   目标屏幕内的x坐标
+         * @param y   目标屏幕内的y坐标
+         */
+        void moveTo(int seq, int x, int y) {
+            synchronized (applyLock) {
+                if (advance(seq, 0) > 0) {
+                    sink.moveTo(x, y);
+                }
+            }
+        }
+
+        /**
+         * 推进序号并注入带序号的离散事件；事件总会注入，推进与注入在同一把锁内，
+         * 序号更早的位置要么已在事件之前提交，要么之后被判为过期
+         *
+         * @param seq    事件序号
+         * @param inject 注入事件
+         */
+        void runAt(int seq, Runnable inject) {
+            synchronized (applyLock) {
+                advance(seq, 0);
+                inject.run();
+            }
+        }
+
+        /**
+         * 推进已应用的序号并统计丢失与补回的位置
+         *
+         * @param seq       位置序号
+         * @param redundant 随该位置携带的冗余位置个数
+         * @return 序号推进量，不大于0表示该位置已过期
+         */
+        private int advance(int seq, int redundant) {
+            while (true) {
+                int last = lastSeq.get();
+                int gap = last == 0 ? 1 : seq - last;
+                if (gap <= 0) {
+                    stalePackets.increment();
+                    return gap;
+                }
+                if (lastSeq.compareAndSet(last, seq)) {
+                    if (gap > 1) {
+                        int recovered = Math.min(redundant, gap - 1);
+                        recoveredPackets.add(recovered);
+                        lostPackets.add(gap - 1 - recovered);
+                        windowSkipped.add(gap - 1);
+                    }
+                    windowExpected.add(gap);
+                    long now = System.nanoTime();
+                    if (lastUpdateNanos != 0) {
+                        updateInterval.record(now - lastUpdateNanos);
+                    }
+                    lastUpdateNanos = now;
+                    return gap;
+                }
+            }
+        }
+
+        long getRecoveredCount() {
+            return recoveredPackets.sum();
+        }
+
+        long getLostCount() {
+            return lostPackets.sum();
+        }
+
+        /**
+         * 取出上一周期的原始丢包率(千分比，未计冗余补回)并开始新的周期，周期内没有移动时返回-1
+         */
+        int takeLossPermille() {
+            long expected = windowExpected.sumThenReset();
+            long skipped = windowSkipped.sumThenReset();
+            if (expected == 0) {
+                return -1;
+            }
+            return (int) Math.min(1000, skipped * 1000 / expected);
+        }
+
+        void close() {
+            Channel current = channel;
+            if (current != null) {
+                current.close();
+                long recovered = recoveredPackets.sum();
+                long lost = lostPackets.sum();
+                logger.info("运动通道已关闭，{}，冗余补回 {} 个，丢失 {} 个，恢复率 {}%，过期丢弃 {} 个",
+                        updateInterval.summary(), recovered, lost,
+                        String.format("%.1f", recovered + lost > 0 ? recovered * 100.0 / (recovered + lost) : 100.0),
+                        stalePackets.sum());
+            }
+        }
+    }
+}
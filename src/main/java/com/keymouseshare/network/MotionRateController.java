@@ -0,0 +1,113 @@
+package com.keymouseshare.network;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个客户端的鼠标移动发送速率控制
+ * <p>
+ * 按键、按钮、滚轮等离散事件不受限制，只对鼠标移动限速：两次移动之间至少间隔 1/速率 秒，
+ * 其间的新位置在会话槽位中合并为最新一个。每 {@link #EVALUATE_INTERVAL} 毫秒根据链路状态调整一次速率：
+ * 连接不可写、待写字节超过 {@link #QUEUE_LIMIT}，或保活Ping测得的RTT明显高于基线时视为拥塞，
+ * 速率减半（不低于 {@link #MIN_RATE}）；否则每次增加 {@link #RATE_STEP}，达到 {@link #MAX_RATE} 后不再限速。
+ * 发送鼠标移动前与每次保活检查时都会尝试调整，鼠标静止时速率同样会回升。
+ * 除 {@link #getRate()} 外只在连接所属的EventLoop中访问。
+ */
+public final class MotionRateController {
+    private static final Logger logger = LoggerFactory.getLogger(MotionRateController.class);
+
+    // 速率范围(Hz)，达到上限时不限速
+    static final int MIN_RATE = 60;
+    static final int MAX_RATE = 1000;
+    // 无拥塞时每次增加的速率(Hz)
+    private static final int RATE_STEP = 60;
+    // 调整间隔(毫秒)，与保活Ping间隔一致
+    private static final long EVALUATE_INTERVAL = ControlKeepAlive.PING_INTERVAL;
+    // 保活检查的调度抖动(毫秒)，相邻两次检查略短于调整间隔时仍然调整
+    private static final long EVALUATE_JITTER = 10;
+    // 待写字节上限，超过即视为发送队列积压
+    private static final long QUEUE_LIMIT = 8 * 1024;
+    // RTT超过基线两倍再加该余量时视为拥塞(毫秒)
+    private static final long RTT_SLACK = 10;
+
+    private final String clientIp;
+    private volatile int rate = MAX_RATE;
+    private boolean congested = false;
+    private long lastEvaluateNanos = System.nanoTime();
+
+    MotionRateController(String clientIp) {
+        this.clientIp = clientIp;
+    }
+
+    /**
+     * 当前的鼠标移动发送速率(Hz)，可在任意线程调用
+     */
+    public int getRate() {
+        return rate;
+    }
+
+    /**
+     * 两次鼠标移动之间的最小间隔，不限速时为0
+     */
+    long intervalNanos() {
+        int current = rate;
+        return current >= MAX_RATE ? 0 : TimeUnit.SECONDS.toNanos(1) / current;
+    }
+
+    /**
+     * 发送鼠标移动前与每次保活检查时调用，距上次调整超过调整间隔时按链路状态调整速率
+     *
+     * @param channel   控制连接
+     * @param keepAlive 保活，未协商ping能力时为null
+     */
+    void maybeEvaluate(Channel channel, ControlKeepAlive keepAlive, long now) {
+        if (now - lastEvaluateNanos < TimeUnit.MILLISECONDS.toNanos(EVALUATE_INTERVAL - EVALUATE_JITTER)) {
+            return;
+        }
+        lastEvaluateNanos = now;
+        long pendingBytes = pendingBytes(channel);
+        long rttNanos = keepAlive != null ? keepAlive.getRttNanos() : 0;
+        long baseRttNanos = keepAlive != null ? keepAlive.getBaseRttNanos() : 0;
+        boolean slowRtt = rttNanos > 0 && rttNanos > baseRttNanos * 2 + TimeUnit.MILLISECONDS.toNanos(RTT_SLACK);
+        update(!channel.isWritable() || pendingBytes > QUEUE_LIMIT || slowRtt, pendingBytes, rttNanos);
+    }
+
+    /**
+     * 连接可写状态变化，变为不可写时立即降速
+     */
+    void onWritabilityChanged(Channel channel) {
+        if (!channel.isWritable()) {
+            lastEvaluateNanos = System.nanoTime();
+            update(true, pendingBytes(channel), 0);
+        }
+    }
+
+    private void update(boolean congestedNow, long pendingBytes, long rttNanos) {
+        int previous = rate;
+        int next = congestedNow ? Math.max(MIN_RATE, previous / 2) : Math.min(MAX_RATE, previous + RATE_STEP);
+        rate = next;
+        if (congestedNow != congested) {
+            congested = congestedNow;
+            if (congestedNow) {
+                logger.info("客户端 {} 链路拥塞，鼠标移动速率 {}Hz -> {}Hz，待写 {} 字节，RTT {}ms",
+                        clientIp, previous, next, pendingBytes, String.format("%.1f", rttNanos / 1e6));
+            } else {
+                logger.info("客户端 {} 链路恢复，鼠标移动速率开始回升", clientIp);
+            }
+        } else if (next == MAX_RATE && previous < MAX_RATE) {
+            logger.info("客户端 {} 鼠标移动速率已恢复到 {}Hz", clientIp, MAX_RATE);
+        }
+    }
+
+    /**
+     * 连接待写出的字节数
+     */
+    static long pendingBytes(Channel channel) {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        return buffer != null ? buffer.totalPendingWriteBytes() : 0;
+    }
+}
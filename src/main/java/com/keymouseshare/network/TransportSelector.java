@@ -0,0 +1,187 @@
+package com.keymouseshare.network;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Netty传输层选择
+ * <p>
+ * Linux上优先使用io_uring（classpath中存在netty-incubator-transport-native-io_uring且内核支持时），
+ * 其次使用原生epoll（边缘触发），其余平台或原生库不可用时自动回退到NIO。
+ * 可通过 -Dkeymouseshare.transport=nio|epoll|io_uring 指定。
+ */
+public final class TransportSelector {
+    private static final Logger logger = LoggerFactory.getLogger(TransportSelector.class);
+
+    public enum Transport {
+        IO_URING, EPOLL, NIO
+    }
+
+    private static final String TRANSPORT_PROPERTY = "keymouseshare.transport";
+
+    // 控制连接的收发缓冲区大小，可通过 -Dkeymouseshare.socket.bufferKb 调整
+    private static final int SOCKET_BUFFER_SIZE = Integer.getInteger("keymouseshare.socket.bufferKb", 64) * 1024;
+
+    private static final String IO_URING_PACKAGE = "io.netty.incubator.channel.uring.";
+
+    private static final Transport TRANSPORT = select();
+
+    private TransportSelector() {
+    }
+
+    public static Transport current() {
+        return TRANSPORT;
+    }
+
+    private static Transport select() {
+        String preferred = System.getProperty(TRANSPORT_PROPERTY, "").trim().toLowerCase();
+        boolean auto = preferred.isEmpty();
+        if (!auto && !preferred.equals("nio") && !preferred.equals("epoll") && !preferred.equals("io_uring")) {
+            logger.warn("未知的传输类型: {}，自动选择", preferred);
+            auto = true;
+        }
+        if (!auto && preferred.equals("nio")) {
+            logger.info("使用NIO传输（已指定）");
+            return Transport.NIO;
+        }
+        if ((auto || preferred.equals("io_uring")) && isIoUringAvailable()) {
+            logger.info("使用io_uring传输");
+            return Transport.IO_URING;
+        }
+        // 指定io_uring但不可用时同样先尝试epoll
+        if (Epoll.isAvailable()) {
+            logger.info("使用epoll传输");
+            return Transport.EPOLL;
+        }
+        logger.info("使用NIO传输，epoll不可用: {}", Epoll.unavailabilityCause() != null ? Epoll.unavailabilityCause().getMessage() : "");
+        return Transport.NIO;
+    }
+
+    private static boolean isIoUringAvailable() {
+        try {
+            Class<?> ioUring = Class.forName(IO_URING_PACKAGE + "IOUring");
+            return (Boolean) ioUring.getMethod("isAvailable").invoke(null);
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (Throwable e) {
+            logger.debug("io_uring不可用: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 创建与当前传输匹配的EventLoopGroup
+     *
+     * @param threads 线程数，0表示使用Netty默认值
+     * @param name    线程名前缀
+     */
+    public static EventLoopGroup newEventLoopGroup(int threads, String name) {
+        ThreadFactory threadFactory = new DefaultThreadFactory(name, true);
+        switch (TRANSPORT) {
+            case IO_URING:
+                try {
+                    return (EventLoopGroup) Class.forName(IO_URING_PACKAGE + "IOUringEventLoopGroup")
+                            .getConstructor(int.class, ThreadFactory.class)
+                            .newInstance(threads, threadFactory);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("无法创建io_uring EventLoopGroup", e);
+                }
+            case EPOLL:
+                return new EpollEventLoopGroup(threads, threadFactory);
+            default:
+                return new NioEventLoopGroup(threads, threadFactory);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Class<? extends ServerChannel> serverChannelClass() {
+        switch (TRANSPORT) {
+            case IO_URING:
+                return (Class<? extends ServerChannel>) ioUringClass("IOUringServerSocketChannel");
+            case EPOLL:
+                return EpollServerSocketChannel.class;
+            default:
+                return NioServerSocketChannel.class;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Class<? extends SocketChannel> socketChannelClass() {
+        switch (TRANSPORT) {
+            case IO_URING:
+                return (Class<? extends SocketChannel>) ioUringClass("IOUringSocketChannel");
+            case EPOLL:
+                return EpollSocketChannel.class;
+            default:
+                return NioSocketChannel.class;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Class<? extends DatagramChannel> datagramChannelClass() {
+        switch (TRANSPORT) {
+            case IO_URING:
+                return (Class<? extends DatagramChannel>) ioUringClass("IOUringDatagramChannel");
+            case EPOLL:
+                return EpollDatagramChannel.class;
+            default:
+                return NioDatagramChannel.class;
+        }
+    }
+
+    private static Class<?> ioUringClass(String simpleName) {
+        try {
+            return Class.forName(IO_URING_PACKAGE + simpleName);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("找不到io_uring通道类: " + simpleName, e);
+        }
+    }
+
+    /**
+     * 设置服务端接受的控制连接的套接字参数
+     */
+    public static void configure(ServerBootstrap bootstrap) {
+        bootstrap.childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.SO_SNDBUF, SOCKET_BUFFER_SIZE)
+                .childOption(ChannelOption.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+        if (TRANSPORT == Transport.EPOLL) {
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+                    .childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+                    .childOption(EpollChannelOption.TCP_QUICKACK, true);
+        }
+    }
+
+    /**
+     * 设置客户端控制连接的套接字参数
+     */
+    public static void configure(Bootstrap bootstrap) {
+        bootstrap.option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_SNDBUF, SOCKET_BUFFER_SIZE)
+                .option(ChannelOption.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+        if (TRANSPORT == Transport.EPOLL) {
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+                    .option(EpollChannelOption.TCP_QUICKACK, true);
+        }
+    }
+}
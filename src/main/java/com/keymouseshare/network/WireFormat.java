@@ -0,0 +1,9 @@
+package com.keymouseshare.network;
+
+/**
+ * 控制消息线路编码格式
+ */
+public enum WireFormat {
+    JSON,   // Gson JSON编码，兼容旧版本节点
+    BINARY, // 紧凑二进制编码，见ControlEventCodec
+}
@@ -11,11 +11,16 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 设备存储
+ * 本机设备和控制端设备另有索引，查询时不遍历设备表；角色变化需通过 {@link #setDeviceRole} 以维护索引
  */
 public class DeviceStorage {
 
     private final Map<String, DeviceInfo> discoveredDevices = new ConcurrentHashMap<>();
 
+    // 角色索引，只在持有本对象锁时修改
+    private volatile DeviceInfo localDevice;
+    private volatile DeviceInfo serverDevice;
+
     private static final DeviceStorage INSTANCE = new DeviceStorage();
 
     public static DeviceStorage getInstance() {
@@ -23,17 +28,11 @@ public class DeviceStorage {
     }
 
     public DeviceInfo getLocalDevice() {
-        return discoveredDevices.get(NetUtil.getLocalIpAddress());
+        return localDevice;
     }
 
     public DeviceInfo getSeverDevice() {
-        // 便利discoveredDevices，找到第一个类型为SERVER的设备
-        for (DeviceInfo device : discoveredDevices.values()) {
-            if (device.getDeviceType().equals(DeviceType.SERVER.name())) {
-                return device;
-            }
-        }
-        return null;
+        return serverDevice;
     }
 
 
@@ -42,8 +41,64 @@ public class DeviceStorage {
         return discoveredDevices;
     }
 
-    public void setDiscoveryDevice(DeviceInfo device) {
+    public synchronized void setDiscoveryDevice(DeviceInfo device) {
         discoveredDevices.put(device.getIpAddress(), device);
+        if (device.getIpAddress().equals(NetUtil.getLocalIpAddress())) {
+            localDevice = device;
+        }
+        updateServerIndex(device);
+    }
+
+    /**
+     * 本机IP变化后把本机设备改到新IP下：更新设备及其屏幕的IP、设备表中的键和本机索引
+     *
+     * @param oldIpAddress 原IP地址
+     * @param newIpAddress 新IP地址
+     * @return 本机设备，尚未登记时返回null
+     */
+    public synchronized DeviceInfo rekeyLocalDevice(String oldIpAddress, String newIpAddress) {
+        DeviceInfo device = localDevice != null ? localDevice : discoveredDevices.get(oldIpAddress);
+        if (device == null) {
+            return null;
+        }
+        discoveredDevices.remove(device.getIpAddress(), device);
+        device.setIpAddress(newIpAddress);
+        if (device.getScreens() != null) {
+            for (ScreenInfo screen : device.getScreens()) {
+                screen.setDeviceIp(newIpAddress);
+            }
+        }
+        DeviceInfo replaced = discoveredDevices.put(newIpAddress, device);
+        if (replaced != null && replaced == serverDevice) {
+            serverDevice = null;
+        }
+        localDevice = device;
+        updateServerIndex(device);
+        return device;
+    }
+
+    /**
+     * 修改设备的角色和连接状态并更新索引
+     *
+     * @param device           设备信息
+     * @param deviceType       设备类型
+     * @param connectionStatus 连接状态
+     */
+    public synchronized void setDeviceRole(DeviceInfo device, String deviceType, String connectionStatus) {
+        device.setDeviceType(deviceType);
+        device.setConnectionStatus(connectionStatus);
+        if (discoveredDevices.get(device.getIpAddress()) == device) {
+            updateServerIndex(device);
+        }
+    }
+
+    private void updateServerIndex(DeviceInfo device) {
+        DeviceInfo current = serverDevice;
+        if (DeviceType.SERVER.name().equals(device.getDeviceType())) {
+            serverDevice = device;
+        } else if (current != null && current.getIpAddress().equals(device.getIpAddress())) {
+            serverDevice = null;
+        }
     }
 
     /**
@@ -65,8 +120,14 @@ public class DeviceStorage {
         return discoveredDevices.get(deviceIpAddress);
     }
 
-    public void removeDiscoveryDevice(String ipAddress) {
-        discoveredDevices.remove(ipAddress);
+    public synchronized void removeDiscoveryDevice(String ipAddress) {
+        DeviceInfo removed = discoveredDevices.remove(ipAddress);
+        if (removed != null && removed == serverDevice) {
+            serverDevice = null;
+        }
+        if (removed != null && removed == localDevice) {
+            localDevice = null;
+        }
     }
 
     public void printLocalDevices() {
@@ -3,6 +3,7 @@ package com.keymouseshare.storage;
 import com.keymouseshare.bean.ScreenInfo;
 import com.keymouseshare.listener.VirtualDesktopStorageListener;
 import com.keymouseshare.uifx.ScreenPreviewUI;
+import com.keymouseshare.util.ScreenTopology;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Screen;
@@ -13,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import java.awt.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
@@ -33,22 +35,26 @@ public class VirtualDesktopStorage {
     /**
      * 激活屏幕
      */
-    private ScreenInfo activeScreen;
+    private volatile ScreenInfo activeScreen;
 
-    private double[] mouseLocationTransform = new double[2];
+    // 整体替换而非原地修改，读取方拿到的x、y比例总是同一次设置的结果
+    private volatile double[] mouseLocationTransform = new double[2];
 
     /**
-     * 虚拟桌面鼠标位置[x,y]
+     * 虚拟桌面鼠标位置，高32位为x、低32位为y
+     * 输入线程与边缘检测线程通过CAS读写同一个long，不会读到撕裂的坐标，也不争用对象锁
      */
-    private int[] mouseLocation = new int[2];
+    private final AtomicLong mouseLocation = new AtomicLong();
 
 
     public synchronized void setActiveScreen(ScreenInfo activeScreen) {
         this.activeScreen = activeScreen;
         Rectangle rectangle = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().getBounds();
-        mouseLocationTransform[0] = (double) activeScreen.getWidth() / rectangle.width;
-        mouseLocationTransform[1] = (double) activeScreen.getHeight() / rectangle.height;
-        logger.info("mouseLocationTransform: {} {}", mouseLocationTransform[0], mouseLocationTransform[1]);
+        double[] transform = new double[]{
+                (double) activeScreen.getWidth() / rectangle.width,
+                (double) activeScreen.getHeight() / rectangle.height};
+        mouseLocationTransform = transform;
+        logger.info("mouseLocationTransform: {} {}", transform[0], transform[1]);
     }
 
     public ScreenInfo getActiveScreen() {
@@ -59,32 +65,65 @@ public class VirtualDesktopStorage {
         return mouseLocationTransform;
     }
 
-    public synchronized void moveMouseLocation(int dx, int dy) {
-        // 锁定鼠标在当前虚拟屏幕内，防止鼠标快速移动跳出屏幕
-        if (this.mouseLocation[0] + dx < activeScreen.getVx()
-                || this.mouseLocation[0] + dx > activeScreen.getVx() + activeScreen.getWidth()
-                || this.mouseLocation[1] + dy < activeScreen.getVy()
-                || this.mouseLocation[1] + dy > activeScreen.getVy() + activeScreen.getHeight()) {
-            return;
-        }
-        this.mouseLocation[0] += dx;
-        this.mouseLocation[1] += dy;
-        setMouseLocation(this.mouseLocation[0], this.mouseLocation[1]);
+    public void moveMouseLocation(int dx, int dy) {
+        long current;
+        long next;
+        do {
+            current = mouseLocation.get();
+            int x = locationX(current) + dx;
+            int y = locationY(current) + dy;
+            // 锁定鼠标在当前虚拟屏幕内，防止鼠标快速移动跳出屏幕
+            if (!insideActiveScreen(x, y)) {
+                return;
+            }
+            next = packLocation(x, y);
+        } while (!mouseLocation.compareAndSet(current, next));
     }
 
-    public synchronized void setMouseLocation(int x, int y) {
-        if (x < activeScreen.getVx()
-                || x > activeScreen.getVx() + activeScreen.getWidth()
-                || y < activeScreen.getVy()
-                || y > activeScreen.getVy() + activeScreen.getHeight()) {
+    public void setMouseLocation(int x, int y) {
+        if (!insideActiveScreen(x, y)) {
             return;
         }
-        logger.debug("setMouseLocation: {} {}", x, y);
-        this.mouseLocation = new int[]{x, y};
+        // 每次鼠标移动都会调用，不输出日志：默认的DEBUG级别下每次都会装箱并格式化
+        mouseLocation.set(packLocation(x, y));
+    }
+
+    private boolean insideActiveScreen(int x, int y) {
+        ScreenInfo screen = activeScreen;
+        return x >= screen.getVx()
+                && x <= screen.getVx() + screen.getWidth()
+                && y >= screen.getVy()
+                && y <= screen.getVy() + screen.getHeight();
+    }
+
+    /**
+     * 获取鼠标位置快照，使用 {@link #locationX(long)}、{@link #locationY(long)} 解出坐标
+     * 一次读取即可得到一致的x、y，不创建对象
+     *
+     * @return 打包后的鼠标位置
+     */
+    public long getMouseLocationSnapshot() {
+        return mouseLocation.get();
+    }
+
+    public static int locationX(long location) {
+        return (int) (location >> 32);
+    }
+
+    public static int locationY(long location) {
+        return (int) location;
+    }
+
+    private static long packLocation(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
     }
 
+    /**
+     * 获取鼠标位置[x,y]的副本，高频路径请使用 {@link #getMouseLocationSnapshot()}
+     */
     public int[] getMouseLocation() {
-        return mouseLocation;
+        long location = mouseLocation.get();
+        return new int[]{locationX(location), locationY(location)};
     }
 
     public void setApplyVirtualDesktopScreen(boolean applyVirtualDesktopScreen) {
@@ -97,6 +136,11 @@ public class VirtualDesktopStorage {
 
     private ConcurrentMap<String, ScreenInfo> screens = new ConcurrentHashMap<>();
     private Rectangle2D virtualBounds;
+
+    /**
+     * 编译后的屏幕拓扑，布局变化时整体替换
+     */
+    private volatile ScreenTopology topology = ScreenTopology.EMPTY;
     private Set<VirtualDesktopStorageListener> listeners = new HashSet<>();
 
     public void applyScreen(ScreenInfo screen) {
@@ -148,6 +192,22 @@ public class VirtualDesktopStorage {
         return screens;
     }
 
+    /**
+     * 获取当前屏幕拓扑
+     */
+    public ScreenTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * 按当前屏幕布局重新编译拓扑并原子替换
+     */
+    public void compileTopology() {
+        ScreenTopology compiled = ScreenTopology.compile(screens);
+        topology = compiled;
+        logger.info("屏幕拓扑已编译，屏幕数量: {}", compiled.size());
+    }
+
     /**
      * 添加监听器
      *
@@ -170,6 +230,10 @@ public class VirtualDesktopStorage {
      * 通知所有监听器
      */
     public void virtualDesktopChanged() {
+        // 已应用布局时屏幕增减需同步到拓扑
+        if (isApplyVirtualDesktopScreen) {
+            compileTopology();
+        }
         for (VirtualDesktopStorageListener listener : listeners) {
             listener.onVirtualDesktopChanged();
         }
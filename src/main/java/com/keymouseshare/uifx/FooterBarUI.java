@@ -5,6 +5,8 @@ import com.keymouseshare.network.DeviceDiscovery;
 import com.keymouseshare.storage.DeviceStorage;
 import com.keymouseshare.storage.VirtualDesktopStorage;
 import com.keymouseshare.util.NetUtil;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
@@ -27,12 +29,14 @@ import javafx.stage.Stage;
 import javafx.stage.Window;
 import javafx.event.EventHandler;
 import javafx.scene.input.MouseEvent;
+import javafx.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.*;
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -49,6 +53,9 @@ public class FooterBarUI extends HBox {
     private Label xPositionLabel;
     private Label yPositionLabel;
     private Label screenPositionLabel;
+    private Label motionRateLabel;
+    // 主控端每秒刷新一次各客户端的移动速率，与鼠标是否移动无关
+    private final Timeline motionRateTimeline = new Timeline(new KeyFrame(Duration.seconds(1), event -> updateMotionRates()));
 
     private DeviceDiscovery deviceDiscovery;
     private ControlRequestManager controlRequestManager;
@@ -93,8 +100,13 @@ public class FooterBarUI extends HBox {
         screenPositionLabel.setFont(Font.font(12));
         screenPositionLabel.setStyle("-fx-text-fill: gray;");
 
+        motionRateLabel = new Label();
+        motionRateLabel.setFont(Font.font(12));
+        motionRateLabel.setStyle("-fx-text-fill: gray;");
+        motionRateTimeline.setCycleCount(Timeline.INDEFINITE);
+
         HBox positionBox = new HBox(10);
-        positionBox.getChildren().addAll(userInfoButton, mouseLabel, xPositionLabel, yPositionLabel, screenPositionLabel);
+        positionBox.getChildren().addAll(userInfoButton, mouseLabel, xPositionLabel, yPositionLabel, screenPositionLabel, motionRateLabel);
         positionBox.setAlignment(Pos.CENTER_LEFT); // 垂直居中，左对齐
         
         // 创建启动服务器按钮（底部）
@@ -274,6 +286,23 @@ public class FooterBarUI extends HBox {
         // 是主控端端时才显示虚拟屏幕信息
         updateScreenInfo();
     }
+
+    /**
+     * 更新各客户端的鼠标移动发送速率显示，链路拥塞时速率会降低
+     */
+    private void updateMotionRates() {
+        if (controlRequestManager == null) {
+            return;
+        }
+        Map<String, Integer> rates = controlRequestManager.getMotionRates();
+        StringBuilder text = new StringBuilder();
+        rates.forEach((ip, rate) -> text.append(text.length() == 0 ? "移动速率: " : "  ").append(ip).append(' ').append(rate).append("Hz"));
+        String current = text.toString();
+        // 速率不变时不触发重新布局
+        if (!current.equals(motionRateLabel.getText())) {
+            motionRateLabel.setText(current);
+        }
+    }
     
     /**
      * 使用JavaFX获取并更新屏幕信息
@@ -281,7 +310,8 @@ public class FooterBarUI extends HBox {
     public void updateScreenInfo() {
         // 显示更详细的信息，包括屏幕分辨率和完整坐标空间信息
         if(virtualDesktopStorage.isApplyVirtualDesktopScreen()){
-            screenPositionLabel.setText("虚拟桌面【"+virtualDesktopStorage.getActiveScreen().getScreenName() +"】坐标: ("+ virtualDesktopStorage.getMouseLocation()[0]+","+ virtualDesktopStorage.getMouseLocation()[1]+")");
+            int[] location = virtualDesktopStorage.getMouseLocation();
+            screenPositionLabel.setText("虚拟桌面【"+virtualDesktopStorage.getActiveScreen().getScreenName() +"】坐标: ("+ location[0]+","+ location[1]+")");
         }
     }
 
@@ -294,6 +324,7 @@ public class FooterBarUI extends HBox {
             applayScreenButton.setVisible(true);
             applayScreenButton.setText("应用设置");
             applayScreenButton.setDisable(false);
+            motionRateTimeline.play();
         } else {
             startServerButton.setDisable(true);
             applayScreenButton.setText("请在控制端设置屏幕");
@@ -302,6 +333,8 @@ public class FooterBarUI extends HBox {
     }
 
     public void serverDeviceStop() {
+        motionRateTimeline.stop();
+        motionRateLabel.setText("");
         startServerButton.setDisable(false);
         startServerButton.setText("设为主控");
         applayScreenButton.setVisible(false);
@@ -1,5 +1,7 @@
 package com.keymouseshare.uifx;
 
+import com.keymouseshare.util.LatencyRecorder;
+import javafx.application.Platform;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Cursor;
 import javafx.scene.ImageCursor;
@@ -12,15 +14,39 @@ import javafx.scene.shape.Rectangle;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 透明全屏遮罩，用于控制远程屏幕时隐藏本机光标
+ * <p>
+ * 舞台与场景在启动时由 {@link #prewarm()} 创建一次并保持隐藏，切换屏幕时只显示或隐藏，
+ * 不再重复创建Stage/Scene。其它线程通过 {@link #requestShow(Runnable)}、{@link #requestHide(Runnable)}
+ * 提交预先创建好的任务，不等待JavaFX线程；遮罩显示后的第一个渲染脉冲或隐藏后调用传入的回调。
+ */
 public class TransparentFullScreenFxUtils {
 
+    private static final Logger logger = LoggerFactory.getLogger(TransparentFullScreenFxUtils.class);
 
     private static final Stage stage = new Stage(StageStyle.TRANSPARENT);
     private static Pane root;
+    private static Scene scene;
     private static Rectangle overlay;
     private static Cursor transparentCursor;
 
+    private static final Runnable showTask = TransparentFullScreenFxUtils::openTransparentOverlayHiddenCursor;
+    private static final Runnable hideTask = TransparentFullScreenFxUtils::closeFullScreenAndRestoreCursor;
+    private static final Runnable visibleListener = TransparentFullScreenFxUtils::onPulse;
+
+    // 请求显示遮罩的时刻（纳秒），遮罩渲染后清零
+    private static volatile long showRequestedNanos = 0;
+    // 遮罩显示后、隐藏后的回调，只在JavaFX线程中调用
+    private static volatile Runnable onShown;
+    private static volatile Runnable onHidden;
+
+    // 从请求切换到遮罩可见的延迟
+    private static final LatencyRecorder overlayLatency = new LatencyRecorder("遮罩显示延迟", 256, 20);
+
     // 创建透明光标（推荐 >=16x16 避免黑方块）
     public static Cursor createTransparentCursor() {
         // 创建一个1x1像素的透明图像
@@ -56,52 +82,122 @@ public class TransparentFullScreenFxUtils {
     }
 
     /**
-     * 创建一个完全透明的遮罩
+     * 预先创建遮罩舞台和场景，需在JavaFX线程中调用
      */
-    public static void openTransparentOverlayHiddenCursor() {
+    public static void prewarm() {
+        if (scene != null) {
+            return;
+        }
         Rectangle2D bounds = Screen.getPrimary().getBounds();
 
         // 初始化根面板
         root = new Pane();
         root.setPrefSize(bounds.getWidth(), bounds.getHeight());
+        // 确保面板背景也是透明的
+        root.setBackground(null);
+        root.setStyle("-fx-background-color: rgb(0,0,0,0.01);");
 
         // 设置舞台属性
         stage.setAlwaysOnTop(true);
-        stage.setX(bounds.getMinX());
-        stage.setY(bounds.getMinY());
-        stage.setWidth(bounds.getWidth());
-        stage.setHeight(bounds.getHeight());
+        applyBounds(bounds);
 
         // 创建完全透明的场景
-        Scene scene = new Scene(root, bounds.getWidth(), bounds.getHeight(), Color.TRANSPARENT);
-
-        // 确保面板背景也是透明的
-        root.setBackground(null);
-        root.setStyle("-fx-background-color: rgb(0,0,0,0.01);");
-
+        scene = new Scene(root, bounds.getWidth(), bounds.getHeight(), Color.TRANSPARENT);
         applyTransparentCursor(scene);
-
+        // 遮罩显示后的第一个渲染脉冲记录显示延迟
+        scene.addPostLayoutPulseListener(visibleListener);
         stage.setScene(scene);
-        stage.show();
-
-        System.out.println("Transparent overlay opened.");
 
         // 确保清除任何可能存在的遮罩
         overlay = null;
+        logger.info("透明遮罩已预创建");
+    }
+
+    /**
+     * 请求显示遮罩，可在任意线程调用，不等待JavaFX线程
+     *
+     * @param shown 遮罩显示后的第一个渲染脉冲中调用，可为null
+     */
+    public static void requestShow(Runnable shown) {
+        onShown = shown;
+        showRequestedNanos = System.nanoTime();
+        Platform.runLater(showTask);
+    }
+
+    /**
+     * 请求隐藏遮罩，可在任意线程调用，不等待JavaFX线程
+     *
+     * @param hidden 遮罩隐藏后调用，可为null
+     */
+    public static void requestHide(Runnable hidden) {
+        onHidden = hidden;
+        Platform.runLater(hideTask);
+    }
+
+    /**
+     * 显示完全透明的遮罩并隐藏光标，需在JavaFX线程中调用
+     */
+    public static void openTransparentOverlayHiddenCursor() {
+        prewarm();
+        // 主屏幕分辨率可能已变化
+        applyBounds(Screen.getPrimary().getBounds());
+        scene.setCursor(transparentCursor);
+        if (!stage.isShowing()) {
+            stage.show();
+        }
+        stage.toFront();
+        logger.debug("Transparent overlay opened.");
     }
 
     /**
-     * 关闭窗口并恢复鼠标光标
+     * 隐藏遮罩并恢复鼠标光标，需在JavaFX线程中调用
      */
     public static void closeFullScreenAndRestoreCursor() {
+        showRequestedNanos = 0;
         // 恢复光标为默认
-        Scene scene = stage.getScene();
         if (scene != null) {
             scene.setCursor(Cursor.DEFAULT);
         }
-        // 关闭窗口
-        stage.close();
-        System.out.println("Full screen window close.");
+        // 只隐藏窗口，舞台和场景留待下次复用
+        stage.hide();
+        logger.debug("Full screen window hidden.");
+        runCallback(onHidden);
+    }
+
+    private static void applyBounds(Rectangle2D bounds) {
+        if (stage.getX() != bounds.getMinX() || stage.getY() != bounds.getMinY()
+                || stage.getWidth() != bounds.getWidth() || stage.getHeight() != bounds.getHeight()) {
+            stage.setX(bounds.getMinX());
+            stage.setY(bounds.getMinY());
+            stage.setWidth(bounds.getWidth());
+            stage.setHeight(bounds.getHeight());
+        }
+    }
+
+    private static void onPulse() {
+        long requested = showRequestedNanos;
+        if (requested != 0 && stage.isShowing()) {
+            showRequestedNanos = 0;
+            overlayLatency.recordSince(requested);
+            runCallback(onShown);
+        }
+    }
+
+    private static void runCallback(Runnable callback) {
+        if (callback != null) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                logger.error("遮罩回调执行失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 获取遮罩显示延迟统计
+     */
+    public static LatencyRecorder getOverlayLatency() {
+        return overlayLatency;
     }
 
 }
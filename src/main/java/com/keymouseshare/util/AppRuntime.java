@@ -0,0 +1,164 @@
+package com.keymouseshare.util;
+
+import com.keymouseshare.network.TransportSelector;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 应用级共享运行时
+ * <p>
+ * 统一持有一个小的Netty EventLoopGroup（控制服务端、客户端、设备发现共用）和一个定时线程
+ * （心跳、缓存清理、边缘检测等短任务共用），避免各模块各自创建线程池。
+ * 大量、经常顺延的超时（如设备离线判断）使用时间轮，只有真正到期的任务才会被处理。
+ * IO线程数可通过 -Dkeymouseshare.io.threads 调整，默认2。
+ */
+public class AppRuntime {
+    private static final Logger logger = LoggerFactory.getLogger(AppRuntime.class);
+
+    private static final AppRuntime INSTANCE = new AppRuntime();
+
+    public static AppRuntime getInstance() {
+        return INSTANCE;
+    }
+
+    private static final int IO_THREADS = Math.max(1, Integer.getInteger("keymouseshare.io.threads", 2));
+
+    // 时间轮刻度（毫秒），到期任务最多延后一个刻度执行
+    private static final long WHEEL_TICK_MILLIS = 100;
+    private static final int WHEEL_TICKS = 512;
+
+    // 启动后多久输出一次空闲时的资源占用（秒）
+    private static final long IDLE_REPORT_DELAY = 30;
+
+    private volatile EventLoopGroup ioGroup;
+    private volatile ScheduledExecutorService timer;
+    private volatile HashedWheelTimer wheelTimer;
+
+    private AppRuntime() {
+    }
+
+    /**
+     * 获取共享的IO EventLoopGroup
+     */
+    public EventLoopGroup ioGroup() {
+        EventLoopGroup group = ioGroup;
+        if (group == null) {
+            synchronized (this) {
+                group = ioGroup;
+                if (group == null) {
+                    group = TransportSelector.newEventLoopGroup(IO_THREADS, "kms-io");
+                    ioGroup = group;
+                    logger.info("共享IO线程组已创建，线程数: {}，传输: {}", IO_THREADS, TransportSelector.current());
+                }
+            }
+        }
+        return group;
+    }
+
+    /**
+     * 获取共享的定时线程，只用于执行耗时很短的任务
+     */
+    public ScheduledExecutorService timer() {
+        ScheduledExecutorService executor = timer;
+        if (executor == null) {
+            synchronized (this) {
+                executor = timer;
+                if (executor == null) {
+                    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "kms-timer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    timer = executor;
+                    executor.schedule(() -> logResourceUsage("空闲"), IDLE_REPORT_DELAY, TimeUnit.SECONDS);
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 获取共享的时间轮，适合数量多、经常顺延、精度要求为一个刻度的超时
+     */
+    public Timer wheelTimer() {
+        HashedWheelTimer wheel = wheelTimer;
+        if (wheel == null) {
+            synchronized (this) {
+                wheel = wheelTimer;
+                if (wheel == null) {
+                    wheel = new HashedWheelTimer(new DefaultThreadFactory("kms-wheel", true),
+                            WHEEL_TICK_MILLIS, TimeUnit.MILLISECONDS, WHEEL_TICKS);
+                    wheelTimer = wheel;
+                }
+            }
+        }
+        return wheel;
+    }
+
+    /**
+     * 输出当前线程数与常驻内存
+     *
+     * @param stage 阶段说明
+     */
+    public void logResourceUsage(String stage) {
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        long rssKb = readRssKb();
+        if (rssKb >= 0) {
+            logger.info("[{}] 线程数: {}，RSS: {} MB", stage, threads, rssKb / 1024);
+        } else {
+            Runtime runtime = Runtime.getRuntime();
+            logger.info("[{}] 线程数: {}，堆已用: {} MB", stage, threads, (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+        }
+    }
+
+    /**
+     * 读取Linux下进程常驻内存（KB），其它平台返回-1
+     */
+    private static long readRssKb() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("读取RSS失败: {}", e.getMessage());
+        }
+        return -1;
+    }
+
+    public synchronized void shutdown() {
+        logResourceUsage("退出");
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+        if (wheelTimer != null) {
+            wheelTimer.stop();
+            wheelTimer = null;
+        }
+        if (ioGroup != null) {
+            ioGroup.shutdownGracefully();
+            ioGroup = null;
+        }
+        logger.info("共享运行时已关闭");
+    }
+}
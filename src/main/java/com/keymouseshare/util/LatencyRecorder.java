@@ -0,0 +1,88 @@
+package com.keymouseshare.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * 延迟采样统计
+ * 保留最近capacity个样本（纳秒），每记录reportEvery个样本输出一次分位数日志
+ */
+public class LatencyRecorder {
+    private static final Logger logger = LoggerFactory.getLogger(LatencyRecorder.class);
+
+    private final String name;
+    private final long[] samples;
+    private final int reportEvery;
+    private long count;
+
+    public LatencyRecorder(String name, int capacity, int reportEvery) {
+        this.name = name;
+        this.samples = new long[capacity];
+        this.reportEvery = reportEvery;
+    }
+
+    /**
+     * 记录一个样本
+     *
+     * @param nanos 延迟（纳秒）
+     */
+    public void record(long nanos) {
+        boolean report;
+        synchronized (this) {
+            samples[(int) (count % samples.length)] = nanos;
+            count++;
+            report = reportEvery > 0 && count % reportEvery == 0;
+        }
+        if (report) {
+            logger.info(summary());
+        }
+    }
+
+    /**
+     * 记录从startNanos到当前时刻的延迟
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * 计算最近样本的分位数
+     *
+     * @param percentile 分位数，取值0~100
+     * @return 延迟（纳秒），没有样本时返回0
+     */
+    public long percentile(double percentile) {
+        long[] sorted = snapshot();
+        return sorted.length == 0 ? 0 : at(sorted, percentile);
+    }
+
+    /**
+     * 输出统计摘要，例如 "注入延迟: n=1000, p50=0.12ms, p99=1.30ms, max=2.01ms"
+     */
+    public String summary() {
+        long[] sorted = snapshot();
+        if (sorted.length == 0) {
+            return name + ": n=0";
+        }
+        return String.format("%s: n=%d, p50=%.2fms, p99=%.2fms, max=%.2fms", name, getCount(),
+                at(sorted, 50) / 1e6, at(sorted, 99) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    private synchronized long[] snapshot() {
+        int size = (int) Math.min(count, samples.length);
+        long[] copy = Arrays.copyOf(samples, size);
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private static long at(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
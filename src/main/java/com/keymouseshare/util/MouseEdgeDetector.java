@@ -16,31 +16,59 @@ import org.slf4j.LoggerFactory;
 /**
  * 鼠标边缘检测工具类
  * 实现动态阈值检测法来判断鼠标是否接近屏幕边缘
+ * <p>
+ * 是否切换屏幕按用户意图判断：朝边缘方向快速移动到达边缘立即切换，
+ * 停在边缘继续推动（连续多次朝边缘方向的位置更新，或顶在边界像素上不沿边移动）也立即切换，
+ * 沿边缘滑动（如去点滚动条、任务栏）不算推动，缓慢到达时才等待兜底停留时间。
+ * 切换后短时间内、且鼠标离开切换点不远时，不允许切回原屏幕，避免来回跳动。
  */
 public class MouseEdgeDetector {
 
     private static final Logger logger = LoggerFactory.getLogger(MouseEdgeDetector.class);
 
     // 鼠标移动速度计算相关
-    private static final long VELOCITY_CALCULATION_INTERVAL = 100; // 速度计算间隔（毫秒）
+    private static final double VELOCITY_SMOOTHING = 0.5; // 速度指数平滑系数
     private static final int BASE_THRESHOLD = 5; // 基础阈值（像素）
     private static final double VELOCITY_FACTOR = 0.1; // 速度因子
-    private static final long ANTI_FALSE_TRIGGER_TIME = 100; // 防误触时间（毫秒）
+    private static final long ANTI_FALSE_TRIGGER_TIME = 100; // 兜底停留时间（毫秒），缓慢到达边缘时使用
     private static final int IGNORE_BUFFER_ZONE = 165; // 忽略中间区域（像素）
 
+    // 切换意图判断
+    private static final double INTENT_VELOCITY = 1.5; // 朝边缘方向的速度达到该值立即切换（像素/毫秒）
+    private static final int PRESSURE_EVENTS = 3; // 在边缘连续推动的位置更新次数达到该值立即切换
+    private static final int PIN_TOLERANCE = 2; // 顶在边界像素上时允许的沿边抖动（像素）
+    private static final long COOLDOWN_TIME = 300; // 切换后禁止切回原屏幕的时间（毫秒）
+    private static final int HYSTERESIS_DISTANCE = 48; // 离开切换点超过该距离后允许切回（像素）
+
     // 鼠标位置和时间记录
     private static double lastX = 0;
     private static double lastY = 0;
     private static long lastTime = 0;
-    private static double lastVelocity = 0;
+    // 平滑后的x、y方向速度（像素/毫秒），带符号
+    private static double velocityX = 0;
+    private static double velocityY = 0;
 
     // 防误触相关
-    private static long edgeEntryTime = 0;
     private static String lastEdgeScreenId = null;
     private static String currentEdgeScreenId = null;
     private static EdgeDirection lastEdgeDirection = null;
     private static EdgeDirection currentEdgeDirection = null;
 
+    // 最近一次切换：离开的屏幕、切换时刻和切换点，用于防止来回跳动
+    private static String lastSourceScreenId = null;
+    private static long lastTransitionTime = 0;
+    private static int transitionX = 0;
+    private static int transitionY = 0;
+
+    // 停在边缘但尚未满足防误触时间时的剩余等待时间（毫秒），不在边缘时为-1
+    private static volatile long pendingDwellMillis = -1;
+
+    // 最近一次触发切换时，鼠标到达边缘的时刻（纳秒）
+    private static volatile long triggeredArrivalNanos = 0;
+
+    // 从到达边缘到完成切换的延迟
+    private static final LatencyRecorder transitionLatency = new LatencyRecorder("屏幕切换延迟", 256, 20);
+
     // 记录每个屏幕的边缘状态
     private static Map<String, EdgeState> screenEdgeStates = new ConcurrentHashMap<>();
 
@@ -63,6 +91,8 @@ public class MouseEdgeDetector {
     private static class EdgeState {
         boolean isAtEdge;
         long entryTime;
+        long arrivalNanos;
+        int pressure;
         EdgeDirection direction;
 
         EdgeState(boolean isAtEdge, long entryTime, EdgeDirection direction) {
@@ -78,108 +108,104 @@ public class MouseEdgeDetector {
      * @return 如果鼠标在屏幕边缘且满足触发条件，返回将被唤醒鼠标的ScreenInfo对象，否则返回null
      */
     public static MoveTargetScreenInfo isAtScreenEdge() {
-        int x = virtualDesktopStorage.getMouseLocation()[0];
-        int y = virtualDesktopStorage.getMouseLocation()[1];
+        pendingDwellMillis = -1;
+        long location = virtualDesktopStorage.getMouseLocationSnapshot();
+        int x = VirtualDesktopStorage.locationX(location);
+        int y = VirtualDesktopStorage.locationY(location);
         logger.debug("检查鼠标边缘检测: 位置=({}, {})", x, y);
         // 计算鼠标速度
         long currentTime = System.currentTimeMillis();
+        int previousX = (int) lastX;
+        int previousY = (int) lastY;
         double velocity = calculateVelocity(x, y, currentTime);
 
         // 获取动态阈值
         double threshold = calculateDynamicThreshold(velocity);
 
-        logger.debug("鼠标速度: {}, 动态阈值: {}", velocity, threshold);
+        if (logger.isDebugEnabled()) {
+            logger.debug("鼠标速度: {}, 动态阈值: {}", velocity, threshold);
+        }
 
-        // 检查所有屏幕
-        Map<String, ScreenInfo> screens = virtualDesktopStorage.getScreens();
+        // 使用应用布局时编译好的拓扑，不再逐个扫描屏幕
+        ScreenTopology topology = virtualDesktopStorage.getTopology();
 
         // 首先检查鼠标是否在某个屏幕内
-        ScreenInfo currentScreen = null;
-        for (ScreenInfo screen : screens.values()) {
-            if (screen.virtualContains(x, y)) {
-                currentScreen = screen;
-                logger.debug("鼠标在屏幕内: {}:{}", screen.getDeviceIp(), screen.getScreenName());
-                break;
-            }
-        }
+        ScreenTopology.Node currentNode = topology.nodeAt(x, y);
 
         // 如果鼠标不在任何屏幕内，则不触发边缘检测
-        if (currentScreen == null) {
+        if (currentNode == null) {
             logger.debug("鼠标不在任何屏幕内，不触发边缘检测");
-            // 更新最后位置和时间
-            lastX = x;
-            lastY = y;
-            lastTime = currentTime;
-            lastVelocity = velocity;
+            clearEdge();
             return null;
         }
+        ScreenInfo currentScreen = currentNode.getScreen();
 
-        // 检查相邻屏幕边缘
+        // 检查相邻屏幕边缘：只需遍历当前屏幕该方向上的共享边
         ScreenInfo targetScreen = null;
         String targetScreenId = null;
         EdgeDirection targetDirection = null;
 
-        for (Map.Entry<String, ScreenInfo> entry : screens.entrySet()) {
-            ScreenInfo screen = entry.getValue();
-
-            // 跳过当前鼠标所在的屏幕
-            if (screen == currentScreen) {
-                continue;
-            }
-
-            // 检查是否为相邻屏幕
-            if (isAdjacentScreen(currentScreen, screen)) {
-                logger.debug("发现相邻屏幕: {}:{}", screen.getDeviceIp(), screen.getScreenName());
-
-                // 检查鼠标是否在当前屏幕的边缘，并且接近相邻屏幕
-                EdgeDirection direction = getEdgeDirection(x, y, currentScreen, threshold);
-
-                if (direction != EdgeDirection.NONE) {
-                    // 检查是否接近相邻屏幕
-                    if (isCloseToAdjacentScreen(x, y, currentScreen, screen, direction, threshold)) {
-                        targetScreen = screen;
-                        targetScreenId = entry.getKey();
-                        targetDirection = direction;
-                        break;
-                    }
+        EdgeDirection direction = getEdgeDirection(x, y, currentScreen, threshold);
+        if (direction != EdgeDirection.NONE) {
+            for (ScreenTopology.Link link : currentNode.getLinks(direction)) {
+                if (isCloseToAdjacentScreen(x, y, link, direction, threshold)) {
+                    targetScreen = link.getTarget().getScreen();
+                    targetScreenId = link.getTarget().getId();
+                    targetDirection = direction;
+                    break;
                 }
             }
         }
 
+        // 迟滞：刚切换过来时，只有离开切换点足够远或冷却结束后才允许切回原屏幕
+        if (targetScreen != null && isSuppressedByHysteresis(targetScreenId, x, y, currentTime)) {
+            logger.debug("刚从屏幕 {} 切换过来，暂不切回", targetScreenId);
+            targetScreen = null;
+        }
+
         // 如果找到目标屏幕，则检查是否满足触发条件
         if (targetScreen != null) {
 
             logger.debug("屏幕targetScreen {}----屏幕Screen{}", targetScreen.getDeviceIp(), currentScreen.getDeviceIp());
-            // 更新边缘状态
-            updateEdgeState(targetScreenId, targetDirection, currentTime);
+            // 更新边缘状态，只有朝边缘移动或顶在边界上才算推动
+            boolean pushing = velocityToward(targetDirection) > 0
+                    || isPinned(x, y, previousX, previousY, currentScreen, targetDirection);
+            updateEdgeState(targetScreenId, targetDirection, currentTime, pushing);
 
-            // 检查是否满足触发条件（防误触）
-            boolean shouldTrigger = shouldTriggerEdgeTransition(targetScreenId, currentTime);
+            // 检查是否满足触发条件（切换意图）
+            boolean shouldTrigger = shouldTriggerEdgeTransition(targetScreenId, targetDirection, currentTime);
             logger.debug("相邻屏幕 {}:{} 是否满足触发条件: {}", targetScreen.getDeviceIp(), targetScreen.getScreenName(), shouldTrigger);
 
+            if (!shouldTrigger) {
+                EdgeState edgeState = screenEdgeStates.get(targetScreenId);
+                if (edgeState != null && edgeState.isAtEdge) {
+                    pendingDwellMillis = Math.max(0, ANTI_FALSE_TRIGGER_TIME - (currentTime - edgeState.entryTime));
+                }
+            }
+
             if (shouldTrigger) {
                 logger.debug("当前鼠标位置:[{},{}],鼠标方向:{}-----触发边缘检测，将唤醒设备: {} 屏幕: {}", x, y, targetDirection, targetScreen.getDeviceIp(), targetScreen.getScreenName());
-                // 更新最后位置和时间
-                lastX = x;
-                lastY = y;
-                lastTime = currentTime;
-                lastVelocity = velocity;
+                EdgeState edgeState = screenEdgeStates.get(targetScreenId);
+                triggeredArrivalNanos = edgeState != null ? edgeState.arrivalNanos : System.nanoTime();
+                lastSourceScreenId = currentNode.getId();
+                lastTransitionTime = currentTime;
+                transitionX = x;
+                transitionY = y;
+                clearEdge();
                 return new MoveTargetScreenInfo(targetDirection.name(),targetScreen); // 返回将被唤醒鼠标的屏幕信息
             }
         }
 
-        // 更新最后位置和时间
-        lastX = x;
-        lastY = y;
-        lastTime = currentTime;
-        lastVelocity = velocity;
-
+        if (targetScreen == null) {
+            clearEdge();
+        }
         logger.debug("未触发任何屏幕的边缘检测");
         return null;
     }
 
     /**
-     * 计算鼠标移动速度
+     * 计算鼠标移动速度，并更新最后位置和时间
+     * 每次位置更新都参与计算，x、y方向速度分别做指数平滑，用于判断是否朝边缘移动
      *
      * @param x           当前X坐标
      * @param y           当前Y坐标
@@ -187,17 +213,51 @@ public class MouseEdgeDetector {
      * @return 鼠标移动速度（像素/毫秒）
      */
     private static double calculateVelocity(int x, int y, long currentTime) {
-        if (lastTime == 0) {
-            return 0; // 第一次调用，无法计算速度
+        long timeDelta = currentTime - lastTime;
+        if (lastTime != 0 && timeDelta > 0) {
+            velocityX += VELOCITY_SMOOTHING * ((x - lastX) / timeDelta - velocityX);
+            velocityY += VELOCITY_SMOOTHING * ((y - lastY) / timeDelta - velocityY);
         }
+        lastX = x;
+        lastY = y;
+        lastTime = currentTime;
+        return Math.hypot(velocityX, velocityY);
+    }
 
-        long timeDelta = currentTime - lastTime;
-        if (timeDelta < VELOCITY_CALCULATION_INTERVAL) {
-            return lastVelocity; // 时间间隔太短，使用上次速度
+    /**
+     * 朝指定边缘方向的速度分量（像素/毫秒）
+     */
+    private static double velocityToward(EdgeDirection direction) {
+        switch (direction) {
+            case LEFT:
+                return -velocityX;
+            case RIGHT:
+                return velocityX;
+            case TOP:
+                return -velocityY;
+            case BOTTOM:
+                return velocityY;
+            default:
+                return 0;
         }
+    }
 
-        double distance = Math.sqrt(Math.pow(x - lastX, 2) + Math.pow(y - lastY, 2));
-        return distance / timeDelta;
+    /**
+     * 光标是否顶在当前屏幕该方向的边界像素上且几乎没有沿边移动
+     */
+    private static boolean isPinned(int x, int y, int previousX, int previousY, ScreenInfo screen, EdgeDirection direction) {
+        switch (direction) {
+            case LEFT:
+                return x <= screen.getVx() && Math.abs(y - previousY) <= PIN_TOLERANCE;
+            case RIGHT:
+                return x >= screen.getVx() + screen.getWidth() - 1 && Math.abs(y - previousY) <= PIN_TOLERANCE;
+            case TOP:
+                return y <= screen.getVy() && Math.abs(x - previousX) <= PIN_TOLERANCE;
+            case BOTTOM:
+                return y >= screen.getVy() + screen.getHeight() - 1 && Math.abs(x - previousX) <= PIN_TOLERANCE;
+            default:
+                return false;
+        }
     }
 
     /**
@@ -213,43 +273,6 @@ public class MouseEdgeDetector {
         return threshold;
     }
 
-    /**
-     * 检查两个屏幕是否相邻
-     *
-     * @param screen1 屏幕1
-     * @param screen2 屏幕2
-     * @return 如果相邻返回true，否则返回false
-     */
-    private static boolean isAdjacentScreen(ScreenInfo screen1, ScreenInfo screen2) {
-        double left1 = screen1.getVx();
-        double right1 = screen1.getVx() + screen1.getWidth();
-        double top1 = screen1.getVy();
-        double bottom1 = screen1.getVy() + screen1.getHeight();
-
-
-
-        double left2 = screen2.getVx();
-        double right2 = screen2.getVx() + screen2.getWidth();
-        double top2 = screen2.getVy();
-        double bottom2 = screen2.getVy() + screen2.getHeight();
-
-        logger.debug("检查两个屏幕是左右否相邻 screen1 vs screen2 : {}:{} vs {}:{}", left1, right1, left2, right2);
-        logger.debug("检查两个屏幕是上下否相邻 screen1 vs screen2 : {}:{} vs {}:{}", top1, bottom1, top2, bottom2);
-
-        // 检查是否水平相邻（上下边缘对齐）
-        boolean horizontalAdjacent =
-                (Math.abs(right1 - left2) <= 1 || Math.abs(right2 - left1) <= 1) &&  // 共享垂直边缘
-                        (Math.max(top1, top2) < Math.min(bottom1, bottom2)); // Y轴有重叠
-
-
-        // 检查是否垂直相邻（左右边缘对齐）
-        boolean verticalAdjacent =
-                (Math.abs(bottom1 - top2) <= 1 || Math.abs(bottom2 - top1) <= 1) &&  // 共享水平边缘
-                        (Math.max(left1, left2) < Math.min(right1, right2)); // X轴有重叠
-
-        return horizontalAdjacent || verticalAdjacent;
-    }
-
     /**
      * 获取鼠标在屏幕边缘的方向
      *
@@ -287,105 +310,51 @@ public class MouseEdgeDetector {
     /**
      * 检查鼠标是否接近相邻屏幕
      *
-     * @param x              鼠标X坐标
-     * @param y              鼠标Y坐标
-     * @param currentScreen  当前屏幕
-     * @param adjacentScreen 相邻屏幕
-     * @param direction      边缘方向
-     * @param threshold      阈值
+     * @param x         鼠标X坐标
+     * @param y         鼠标Y坐标
+     * @param link      当前屏幕与相邻屏幕的共享边
+     * @param direction 边缘方向
+     * @param threshold 阈值
      * @return 如果接近相邻屏幕返回true，否则返回false
      */
-    private static boolean isCloseToAdjacentScreen(double x, double y, ScreenInfo currentScreen,
-                                                   ScreenInfo adjacentScreen, EdgeDirection direction,
-                                                   double threshold) {
-        double currentLeft = currentScreen.getVx();
-        double currentRight = currentScreen.getVx() + currentScreen.getWidth();
-        double currentTop = currentScreen.getVy();
-        double currentBottom = currentScreen.getVy() + currentScreen.getHeight();
-
-        double adjacentLeft = adjacentScreen.getVx();
-        double adjacentRight = adjacentScreen.getVx() + adjacentScreen.getWidth();
-        double adjacentTop = adjacentScreen.getVy();
-        double adjacentBottom = adjacentScreen.getVy() + adjacentScreen.getHeight();
-
-        logger.debug("检查是否接近相邻屏幕: 方向={}；\n当前屏幕边界: left={}, right={}, top={}, bottom={}；\n相邻屏幕边界: left={}, right={}, top={}, bottom={}", direction, currentLeft, currentRight, currentTop, currentBottom, adjacentLeft, adjacentRight, adjacentTop, adjacentBottom);
-
-        boolean isClose = false;
-
+    private static boolean isCloseToAdjacentScreen(int x, int y, ScreenTopology.Link link,
+                                                   EdgeDirection direction, double threshold) {
+        ScreenTopology.Node adjacent = link.getTarget();
+        boolean isClose;
+        boolean inBufferZone;
         switch (direction) {
             case LEFT:
-                // 鼠标在当前屏幕左边缘，检查是否接近左侧相邻屏幕
-                // 鼠标应该在当前屏幕左侧，并且在相邻屏幕右侧边缘附近
-                isClose = (x < currentLeft + threshold) &&
-                        (Math.abs(x - adjacentRight) < threshold) &&
-                        (y >= Math.max(currentTop, adjacentTop)) &&
-                        (y <= Math.min(currentBottom, adjacentBottom));
+                // 鼠标在当前屏幕左边缘，并且在相邻屏幕右侧边缘附近
+                isClose = Math.abs(x - adjacent.getRight()) < threshold;
                 break;
-
             case RIGHT:
-                // 鼠标在当前屏幕右边缘，检查是否接近右侧相邻屏幕
-                // 鼠标应该在当前屏幕右侧，并且在相邻屏幕左侧边缘附近
-                isClose = (x > currentRight - threshold) &&
-                        (Math.abs(x - adjacentLeft) < threshold) &&
-                        (y >= Math.max(currentTop, adjacentTop)) &&
-                        (y <= Math.min(currentBottom, adjacentBottom));
+                isClose = Math.abs(x - adjacent.getLeft()) < threshold;
                 break;
-
             case TOP:
-                // 鼠标在当前屏幕上边缘，检查是否接近上侧相邻屏幕
-                // 鼠标应该在当前屏幕上侧，并且在相邻屏幕下侧边缘附近
-                isClose = (y < currentTop + threshold) &&
-                        (Math.abs(y - adjacentBottom) < threshold) &&
-                        (x >= Math.max(currentLeft, adjacentLeft)) &&
-                        (x <= Math.min(currentRight, adjacentRight));
+                isClose = Math.abs(y - adjacent.getBottom()) < threshold;
                 break;
-
             case BOTTOM:
-                // 鼠标在当前屏幕下边缘，检查是否接近下侧相邻屏幕
-                // 鼠标应该在当前屏幕下侧，并且在相邻屏幕上侧边缘附近
-                isClose = (y > currentBottom - threshold) &&
-                        (Math.abs(y - adjacentTop) < threshold) &&
-                        (x >= Math.max(currentLeft, adjacentLeft)) &&
-                        (x <= Math.min(currentRight, adjacentRight));
+                isClose = Math.abs(y - adjacent.getTop()) < threshold;
                 break;
+            default:
+                return false;
         }
-
-        logger.debug("是否接近相邻屏幕: {}", isClose);
-
         if (!isClose) {
             return false;
         }
 
-        // 检查是否在缓冲区（忽略中间区域）
-        double bufferLeft = adjacentLeft + IGNORE_BUFFER_ZONE;
-        double bufferRight = adjacentRight - IGNORE_BUFFER_ZONE;
-        double bufferTop = adjacentTop + IGNORE_BUFFER_ZONE;
-        double bufferBottom = adjacentBottom - IGNORE_BUFFER_ZONE;
-
-        boolean inBufferZone = false;
-        switch (direction) {
-            case LEFT:
-            case RIGHT:
-                // 水平方向检查Y轴是否在缓冲区
-                inBufferZone = (y >= bufferTop && y <= bufferBottom);
-                break;
-
-            case TOP:
-            case BOTTOM:
-                // 垂直方向检查X轴是否在缓冲区
-                inBufferZone = (x >= bufferLeft && x <= bufferRight);
-                break;
+        // 沿共享边的坐标需落在重叠区间内，并避开相邻屏幕两端的缓冲区
+        if (direction == EdgeDirection.LEFT || direction == EdgeDirection.RIGHT) {
+            isClose = y >= link.getOverlapStart() && y <= link.getOverlapEnd();
+            inBufferZone = y >= adjacent.getTop() + IGNORE_BUFFER_ZONE && y <= adjacent.getBottom() - IGNORE_BUFFER_ZONE;
+        } else {
+            isClose = x >= link.getOverlapStart() && x <= link.getOverlapEnd();
+            inBufferZone = x >= adjacent.getLeft() + IGNORE_BUFFER_ZONE && x <= adjacent.getRight() - IGNORE_BUFFER_ZONE;
         }
-
-        logger.debug("是否在缓冲区: {}, 缓冲区边界: left={}, right={}, top={}, bottom={}", inBufferZone, bufferLeft, bufferRight, bufferTop, bufferBottom);
-
-        if (inBufferZone) {
-            logger.debug("在缓冲区内，触发边缘检测");
-            return true; // 在缓冲区内，不触发边缘检测
+        if (logger.isDebugEnabled()) {
+            logger.debug("是否接近相邻屏幕 {}: {}, 是否在缓冲区: {}", adjacent.getId(), isClose, inBufferZone);
         }
-
-        logger.debug("在相邻屏幕边缘且不在缓冲区，不触发边缘检测");
-        return false;
+        return isClose && inBufferZone;
     }
 
     /**
@@ -394,26 +363,28 @@ public class MouseEdgeDetector {
      * @param screenId    屏幕ID
      * @param direction   边缘方向
      * @param currentTime 当前时间
+     * @param pushing     本次更新是否在朝边缘推动
      */
-    private static void updateEdgeState(String screenId, EdgeDirection direction, long currentTime) {
+    private static void updateEdgeState(String screenId, EdgeDirection direction, long currentTime, boolean pushing) {
         logger.debug("更新边缘状态: screenId={}, direction={}", screenId, direction);
 
-        // 检查是否是同一个屏幕和方向，如果是，则保持原来的entryTime
-        EdgeState existingState = screenEdgeStates.get(screenId);
-        long entryTime = currentTime;
-
-        if (existingState != null &&
-                existingState.isAtEdge &&
-                existingState.direction == direction &&
-                currentEdgeScreenId != null &&
-                currentEdgeScreenId.equals(screenId)) {
-            // 如果是同一个屏幕且方向相同，保持原来的entryTime
-            entryTime = existingState.entryTime;
-            logger.debug("保持原有进入时间: {}", entryTime);
+        EdgeState state = screenEdgeStates.get(screenId);
+        if (state != null &&
+                state.isAtEdge &&
+                state.direction == direction &&
+                screenId.equals(currentEdgeScreenId)) {
+            // 同一个屏幕且方向相同：保持原来的进入时间，连续推动才累计，沿边滑动时清零
+            state.pressure = pushing ? state.pressure + 1 : 0;
         } else {
-            // 否则使用当前时间作为新的entryTime
-            entryTime = currentTime;
-            logger.debug("设置新的进入时间: {}", entryTime);
+            if (state == null) {
+                state = new EdgeState(true, currentTime, direction);
+                screenEdgeStates.put(screenId, state);
+            }
+            state.isAtEdge = true;
+            state.entryTime = currentTime;
+            state.arrivalNanos = System.nanoTime();
+            state.direction = direction;
+            state.pressure = 0;
         }
 
         // 更新当前边缘信息
@@ -421,40 +392,95 @@ public class MouseEdgeDetector {
         currentEdgeScreenId = screenId;
         lastEdgeDirection = currentEdgeDirection;
         currentEdgeDirection = direction;
+    }
 
-        // 更新屏幕边缘状态
-        screenEdgeStates.put(screenId, new EdgeState(true, entryTime, direction));
+    /**
+     * 鼠标离开边缘，清除当前边缘信息
+     */
+    private static void clearEdge() {
+        if (currentEdgeScreenId != null) {
+            EdgeState state = screenEdgeStates.get(currentEdgeScreenId);
+            if (state != null) {
+                state.isAtEdge = false;
+            }
+            lastEdgeScreenId = currentEdgeScreenId;
+            lastEdgeDirection = currentEdgeDirection;
+            currentEdgeScreenId = null;
+            currentEdgeDirection = null;
+        }
     }
 
     /**
      * 检查是否应该触发边缘过渡
+     * 朝边缘快速移动或在边缘持续推动时立即触发，否则等待兜底停留时间
      *
      * @param screenId    屏幕ID
+     * @param direction   边缘方向
      * @param currentTime 当前时间
      * @return 如果应该触发返回true，否则返回false
      */
-    private static boolean shouldTriggerEdgeTransition(String screenId, long currentTime) {
+    private static boolean shouldTriggerEdgeTransition(String screenId, EdgeDirection direction, long currentTime) {
         EdgeState edgeState = screenEdgeStates.get(screenId);
         if (edgeState == null || !edgeState.isAtEdge) {
             logger.debug("边缘状态为空或不在边缘");
             return false;
         }
 
-        // 检查是否满足防误触时间
+        double towardVelocity = velocityToward(direction);
         long timeAtEdge = currentTime - edgeState.entryTime;
-        boolean shouldTrigger = timeAtEdge >= ANTI_FALSE_TRIGGER_TIME;
+        boolean shouldTrigger = towardVelocity >= INTENT_VELOCITY
+                || edgeState.pressure >= PRESSURE_EVENTS
+                || timeAtEdge >= ANTI_FALSE_TRIGGER_TIME;
 
-        logger.debug("在边缘时间: {}ms, 防误触时间: " + ANTI_FALSE_TRIGGER_TIME + "ms, 是否触发: {}", timeAtEdge, shouldTrigger);
+        if (logger.isDebugEnabled()) {
+            logger.debug("朝边缘速度: {}, 推动次数: {}, 在边缘时间: {}ms, 是否触发: {}",
+                    towardVelocity, edgeState.pressure, timeAtEdge, shouldTrigger);
+        }
+        return shouldTrigger;
+    }
 
-        // 如果不满足触发条件，但已经持续在边缘状态很长时间，也触发
-        if (!shouldTrigger && timeAtEdge > ANTI_FALSE_TRIGGER_TIME * 3) {
-            logger.debug("在边缘状态时间过长，强制触发");
-            // 重置状态以避免重复触发
-            screenEdgeStates.put(screenId, new EdgeState(false, 0, EdgeDirection.NONE));
-            return true;
+    /**
+     * 检查是否因刚刚切换而暂不允许切回原屏幕
+     */
+    private static boolean isSuppressedByHysteresis(String targetScreenId, int x, int y, long currentTime) {
+        if (lastSourceScreenId == null) {
+            return false;
         }
+        boolean coolingDown = currentTime - lastTransitionTime < COOLDOWN_TIME;
+        boolean nearTransitionPoint = Math.abs(x - transitionX) + Math.abs(y - transitionY) < HYSTERESIS_DISTANCE;
+        if (!coolingDown && !nearTransitionPoint) {
+            // 已离开切换点且冷却结束，解除限制
+            lastSourceScreenId = null;
+            return false;
+        }
+        return targetScreenId.equals(lastSourceScreenId) && coolingDown && nearTransitionPoint;
+    }
 
-        return shouldTrigger;
+    /**
+     * 屏幕切换（光标已定位到新屏幕）完成后调用，记录从到达边缘到完成切换的延迟
+     */
+    public static void recordTransitionComplete() {
+        long arrival = triggeredArrivalNanos;
+        if (arrival != 0) {
+            transitionLatency.recordSince(arrival);
+            triggeredArrivalNanos = 0;
+        }
+    }
+
+    /**
+     * 获取屏幕切换延迟统计
+     */
+    public static LatencyRecorder getTransitionLatency() {
+        return transitionLatency;
+    }
+
+    /**
+     * 获取最近一次检测时距满足防误触时间还需等待的毫秒数
+     *
+     * @return 剩余等待时间，鼠标不在可触发的边缘时返回-1
+     */
+    public static long getPendingDwellMillis() {
+        return pendingDwellMillis;
     }
 
     /**
@@ -465,8 +491,11 @@ public class MouseEdgeDetector {
         lastX = 0;
         lastY = 0;
         lastTime = 0;
-        lastVelocity = 0;
-        edgeEntryTime = 0;
+        velocityX = 0;
+        velocityY = 0;
+        pendingDwellMillis = -1;
+        lastSourceScreenId = null;
+        lastTransitionTime = 0;
         lastEdgeScreenId = null;
         currentEdgeScreenId = null;
         lastEdgeDirection = null;
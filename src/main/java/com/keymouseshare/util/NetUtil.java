@@ -1,38 +1,61 @@
 package com.keymouseshare.util;
 
+import com.keymouseshare.listener.NetworkAddressListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 网络工具
+ * <p>
+ * 本机IP和广播地址在第一次使用时解析并缓存，之后只在网卡地址变化时更新：
+ * JDK没有网卡变化通知，这里在共享定时线程上每隔 {@link #REFRESH_INTERVAL} 秒重新解析一次，
+ * 调用方读取的始终是缓存值，不再每次遍历全部网卡。地址变化时通知 {@link NetworkAddressListener}，
+ * 以本机IP为键的数据（设备表、发现广播目标等）由监听方更新。
+ */
 public class NetUtil {
+    private static final Logger logger = LoggerFactory.getLogger(NetUtil.class);
+
+    // 网卡地址复查间隔（秒）
+    private static final long REFRESH_INTERVAL = 10;
+
+    private static volatile String localIpAddress;
+    private static volatile String localBroadcastAddress;
+    private static boolean watching = false;
+    private static final List<NetworkAddressListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 添加本机地址变化监听
+     */
+    public static void addAddressListener(NetworkAddressListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeAddressListener(NetworkAddressListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * 获取本机IP地址
      *
      * @return 本机IP地址
      */
     public static String getLocalIpAddress() {
-        try {
-            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-            while (interfaces.hasMoreElements()) {
-                NetworkInterface networkInterface = interfaces.nextElement();
-                if (networkInterface.isLoopback() || networkInterface.isVirtual() || !networkInterface.isUp()) {
-                    continue;
-                }
-
-                Enumeration<InetAddress> addresses = networkInterface.getInetAddresses();
-                while (addresses.hasMoreElements()) {
-                    InetAddress address = addresses.nextElement();
-                    if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
-                        return address.getHostAddress();
-                    }
-                }
-            }
-        } catch (SocketException e) {
-            e.printStackTrace();
+        String address = localIpAddress;
+        if (address == null) {
+            resolve();
+            address = localIpAddress;
         }
-        return "127.0.0.1";
+        return address;
     }
 
     /**
@@ -41,8 +64,23 @@ public class NetUtil {
      * @return 本机广播地址
      */
     public static String getLocalBroadcastAddress() {
+        String address = localBroadcastAddress;
+        if (address == null) {
+            resolve();
+            address = localBroadcastAddress;
+        }
+        return address;
+    }
+
+    /**
+     * 重新解析本机地址，首次调用时开始定期复查
+     */
+    public static synchronized void resolve() {
+        String ip = "127.0.0.1";
+        String broadcast = "255.255.255.255"; // 默认广播地址
         try {
             Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            search:
             while (interfaces.hasMoreElements()) {
                 NetworkInterface networkInterface = interfaces.nextElement();
                 if (networkInterface.isLoopback() || networkInterface.isVirtual() || !networkInterface.isUp()) {
@@ -53,19 +91,41 @@ public class NetUtil {
                 while (addresses.hasMoreElements()) {
                     InetAddress address = addresses.nextElement();
                     if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
+                        ip = address.getHostAddress();
                         // 计算广播地址 (将IP地址的最后一段替换为255)
-                        String ip = address.getHostAddress();
                         int lastDot = ip.lastIndexOf('.');
                         if (lastDot != -1) {
-                            return ip.substring(0, lastDot + 1) + "255";
+                            broadcast = ip.substring(0, lastDot + 1) + "255";
                         }
+                        break search;
                     }
                 }
             }
         } catch (SocketException e) {
             e.printStackTrace();
         }
-        return "255.255.255.255"; // 默认广播地址
+
+        String previousIp = localIpAddress;
+        boolean changed = previousIp != null && (!Objects.equals(ip, previousIp) || !Objects.equals(broadcast, localBroadcastAddress));
+        if (changed) {
+            logger.warn("本机网络地址已变化: {} -> {}，广播地址: {} -> {}", previousIp, ip, localBroadcastAddress, broadcast);
+        }
+        localIpAddress = ip;
+        localBroadcastAddress = broadcast;
+        if (changed) {
+            for (NetworkAddressListener listener : listeners) {
+                try {
+                    listener.onLocalAddressChanged(previousIp, ip, broadcast);
+                } catch (RuntimeException e) {
+                    logger.error("处理本机地址变化失败: {}", e.getMessage(), e);
+                }
+            }
+        }
+
+        if (!watching) {
+            watching = true;
+            AppRuntime.getInstance().timer().scheduleWithFixedDelay(NetUtil::resolve, REFRESH_INTERVAL, REFRESH_INTERVAL, TimeUnit.SECONDS);
+        }
     }
 
     public static String dealRemoteAddress(String remoteAddress) {
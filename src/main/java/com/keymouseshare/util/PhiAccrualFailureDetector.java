@@ -0,0 +1,137 @@
+package com.keymouseshare.util;
+
+/**
+ * Phi累积故障检测器
+ * <p>
+ * 记录对端心跳到达间隔的滑动窗口，按正态分布估计"当前这么久没收到心跳"的可疑程度phi：
+ * phi = -log10(此刻之后才收到下一次心跳的概率)。phi为1时误判概率约10%，为8时约千万分之一。
+ * 阈值固定时，心跳稳定的对端会更早被判定失联，抖动大的对端自动放宽。
+ * 时间使用单调时钟，方法线程安全。
+ */
+public class PhiAccrualFailureDetector {
+
+    private final double threshold;
+    private final long minStdDeviationMillis;
+    private final long acceptableHeartbeatPauseMillis;
+
+    // 到达间隔的环形窗口
+    private final long[] intervals;
+    private int count = 0;
+    private int index = 0;
+    private double intervalSum = 0;
+    private double squaredIntervalSum = 0;
+
+    private long lastHeartbeatMillis = -1;
+
+    /**
+     * @param threshold                      判定失联的phi阈值
+     * @param maxSampleSize                  保留的到达间隔样本数
+     * @param minStdDeviationMillis          标准差下限，避免间隔过于稳定时一次轻微延迟就误判
+     * @param acceptableHeartbeatPauseMillis 可容忍的额外停顿，如丢失一次UDP心跳或GC停顿
+     * @param firstHeartbeatEstimateMillis   尚无样本时假定的心跳间隔
+     */
+    public PhiAccrualFailureDetector(double threshold, int maxSampleSize, long minStdDeviationMillis,
+                                     long acceptableHeartbeatPauseMillis, long firstHeartbeatEstimateMillis) {
+        this.threshold = threshold;
+        this.minStdDeviationMillis = minStdDeviationMillis;
+        this.acceptableHeartbeatPauseMillis = acceptableHeartbeatPauseMillis;
+        this.intervals = new long[Math.max(2, maxSampleSize)];
+        // 以估计值±1/4作为初始样本，使第一次心跳后就能得到合理的均值和标准差
+        long deviation = firstHeartbeatEstimateMillis / 4;
+        addInterval(firstHeartbeatEstimateMillis - deviation);
+        addInterval(firstHeartbeatEstimateMillis + deviation);
+    }
+
+    /**
+     * 记录一次心跳
+     */
+    public synchronized void heartbeat() {
+        long now = now();
+        if (lastHeartbeatMillis >= 0) {
+            addInterval(now - lastHeartbeatMillis);
+        }
+        lastHeartbeatMillis = now;
+    }
+
+    /**
+     * 当前的可疑程度，尚未收到心跳时为0
+     */
+    public synchronized double phi() {
+        if (lastHeartbeatMillis < 0) {
+            return 0;
+        }
+        return phi(now() - lastHeartbeatMillis, mean(), stdDeviation());
+    }
+
+    public boolean isAvailable() {
+        return phi() < threshold;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 距离phi达到阈值还有多少毫秒，已达到时返回0
+     */
+    public synchronized long millisUntilSuspect() {
+        if (lastHeartbeatMillis < 0) {
+            return 0;
+        }
+        double mean = mean();
+        double stdDeviation = stdDeviation();
+        // phi随时间单调递增，二分求出达到阈值的时间点
+        double low = 0;
+        double high = mean + stdDeviation * 64;
+        for (int i = 0; i < 40; i++) {
+            double middle = (low + high) / 2;
+            if (phi(middle, mean, stdDeviation) < threshold) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        long elapsed = now() - lastHeartbeatMillis;
+        return Math.max(0, (long) Math.ceil(high) - elapsed);
+    }
+
+    private void addInterval(long interval) {
+        if (count == intervals.length) {
+            long dropped = intervals[index];
+            intervalSum -= dropped;
+            squaredIntervalSum -= (double) dropped * dropped;
+        } else {
+            count++;
+        }
+        intervals[index] = interval;
+        index = (index + 1) % intervals.length;
+        intervalSum += interval;
+        squaredIntervalSum += (double) interval * interval;
+    }
+
+    private double mean() {
+        return intervalSum / count + acceptableHeartbeatPauseMillis;
+    }
+
+    private double stdDeviation() {
+        double mean = intervalSum / count;
+        double variance = Math.max(0, squaredIntervalSum / count - mean * mean);
+        return Math.max(Math.sqrt(variance), minStdDeviationMillis);
+    }
+
+    /**
+     * 使用正态分布累积函数的logistic近似计算phi
+     */
+    private static double phi(double elapsed, double mean, double stdDeviation) {
+        double y = (elapsed - mean) / stdDeviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (elapsed > mean) {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
+}
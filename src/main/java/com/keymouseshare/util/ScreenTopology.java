@@ -0,0 +1,214 @@
+package com.keymouseshare.util;
+
+import com.keymouseshare.bean.ScreenInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 虚拟桌面屏幕拓扑
+ * <p>
+ * 在应用虚拟桌面布局时一次性编译：每个屏幕四个方向的相邻屏幕及共享边的重叠区间，
+ * 以及按左边界排序的屏幕索引。编译结果不可变，布局变化时整体替换，
+ * 边缘检测只需一次定位（带上次命中缓存）和遍历当前屏幕单个方向的相邻边。
+ */
+public final class ScreenTopology {
+
+    public static final ScreenTopology EMPTY = new ScreenTopology(new Node[0]);
+
+    // 判定两条边重合的容差（像素），与原有相邻判断保持一致
+    private static final int ADJACENT_TOLERANCE = 1;
+
+    /**
+     * 屏幕节点，坐标在编译时从ScreenInfo复制
+     */
+    public static final class Node {
+        private final String id;
+        private final ScreenInfo screen;
+        private final int left;
+        private final int top;
+        private final int right;
+        private final int bottom;
+        // 按MouseEdgeDetector.EdgeDirection序号索引：LEFT, RIGHT, TOP, BOTTOM
+        private final Link[][] links = new Link[4][];
+
+        private Node(String id, ScreenInfo screen) {
+            this.id = id;
+            this.screen = screen;
+            this.left = screen.getVx();
+            this.top = screen.getVy();
+            this.right = screen.getVx() + screen.getWidth();
+            this.bottom = screen.getVy() + screen.getHeight();
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public ScreenInfo getScreen() {
+            return screen;
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getRight() {
+            return right;
+        }
+
+        public int getBottom() {
+            return bottom;
+        }
+
+        /**
+         * 获取指定方向的相邻屏幕
+         */
+        public Link[] getLinks(MouseEdgeDetector.EdgeDirection direction) {
+            return direction.ordinal() < links.length ? links[direction.ordinal()] : NO_LINKS;
+        }
+
+        private boolean contains(int x, int y) {
+            return x >= left && x < right && y >= top && y < bottom;
+        }
+    }
+
+    /**
+     * 共享边：相邻屏幕及共享边在垂直于方向的坐标轴上的重叠区间[overlapStart, overlapEnd]
+     */
+    public static final class Link {
+        private final Node target;
+        private final int overlapStart;
+        private final int overlapEnd;
+
+        private Link(Node target, int overlapStart, int overlapEnd) {
+            this.target = target;
+            this.overlapStart = overlapStart;
+            this.overlapEnd = overlapEnd;
+        }
+
+        public Node getTarget() {
+            return target;
+        }
+
+        public int getOverlapStart() {
+            return overlapStart;
+        }
+
+        public int getOverlapEnd() {
+            return overlapEnd;
+        }
+    }
+
+    private static final Link[] NO_LINKS = new Link[0];
+
+    // 按左边界升序排列
+    private final Node[] nodes;
+    private final int[] lefts;
+
+    // 上次命中的节点下标；多线程下只是缓存，读到旧值也会被校验
+    private int lastHit = 0;
+
+    private ScreenTopology(Node[] nodes) {
+        this.nodes = nodes;
+        this.lefts = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            lefts[i] = nodes[i].left;
+        }
+    }
+
+    /**
+     * 根据当前屏幕布局编译拓扑
+     *
+     * @param screens 屏幕映射，键为屏幕ID
+     * @return 不可变的拓扑
+     */
+    public static ScreenTopology compile(Map<String, ScreenInfo> screens) {
+        List<Node> list = new ArrayList<>(screens.size());
+        for (Map.Entry<String, ScreenInfo> entry : screens.entrySet()) {
+            list.add(new Node(entry.getKey(), entry.getValue()));
+        }
+        Node[] nodes = list.toArray(new Node[0]);
+        Arrays.sort(nodes, Comparator.comparingInt(Node::getLeft));
+
+        for (Node node : nodes) {
+            List<Link> left = new ArrayList<>();
+            List<Link> right = new ArrayList<>();
+            List<Link> top = new ArrayList<>();
+            List<Link> bottom = new ArrayList<>();
+            for (Node other : nodes) {
+                if (other == node) {
+                    continue;
+                }
+                int overlapTop = Math.max(node.top, other.top);
+                int overlapBottom = Math.min(node.bottom, other.bottom);
+                if (overlapTop < overlapBottom) {
+                    if (Math.abs(node.left - other.right) <= ADJACENT_TOLERANCE) {
+                        left.add(new Link(other, overlapTop, overlapBottom));
+                    }
+                    if (Math.abs(node.right - other.left) <= ADJACENT_TOLERANCE) {
+                        right.add(new Link(other, overlapTop, overlapBottom));
+                    }
+                }
+                int overlapLeft = Math.max(node.left, other.left);
+                int overlapRight = Math.min(node.right, other.right);
+                if (overlapLeft < overlapRight) {
+                    if (Math.abs(node.top - other.bottom) <= ADJACENT_TOLERANCE) {
+                        top.add(new Link(other, overlapLeft, overlapRight));
+                    }
+                    if (Math.abs(node.bottom - other.top) <= ADJACENT_TOLERANCE) {
+                        bottom.add(new Link(other, overlapLeft, overlapRight));
+                    }
+                }
+            }
+            node.links[MouseEdgeDetector.EdgeDirection.LEFT.ordinal()] = left.toArray(NO_LINKS);
+            node.links[MouseEdgeDetector.EdgeDirection.RIGHT.ordinal()] = right.toArray(NO_LINKS);
+            node.links[MouseEdgeDetector.EdgeDirection.TOP.ordinal()] = top.toArray(NO_LINKS);
+            node.links[MouseEdgeDetector.EdgeDirection.BOTTOM.ordinal()] = bottom.toArray(NO_LINKS);
+        }
+        return new ScreenTopology(nodes);
+    }
+
+    /**
+     * 查找包含指定虚拟坐标的屏幕
+     *
+     * @return 屏幕节点，不在任何屏幕内时返回null
+     */
+    public Node nodeAt(int x, int y) {
+        if (nodes.length == 0) {
+            return null;
+        }
+        int hit = lastHit;
+        if (hit < nodes.length && nodes[hit].contains(x, y)) {
+            return nodes[hit];
+        }
+        // 二分找到最后一个左边界不大于x的屏幕，再向前检查
+        int index = Arrays.binarySearch(lefts, x);
+        if (index < 0) {
+            index = -index - 2;
+        } else {
+            // 左边界相同的屏幕可能有多个，移到最后一个
+            while (index + 1 < lefts.length && lefts[index + 1] == x) {
+                index++;
+            }
+        }
+        for (int i = index; i >= 0; i--) {
+            if (nodes[i].contains(x, y)) {
+                lastHit = i;
+                return nodes[i];
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+}
@@ -26,11 +26,13 @@ public class SlidingCache<K, V> {
 
     private final ConcurrentSkipListMap<K, CacheObject> cache = new ConcurrentSkipListMap<>();
     private final long ttlMillis;
-    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor();
+    // 清理任务运行在共享定时线程上
+    private final ScheduledFuture<?> cleaner;
 
     public SlidingCache(long ttlMillis) {
         this.ttlMillis = ttlMillis;
-        cleaner.scheduleAtFixedRate(this::cleanup, ttlMillis, ttlMillis, TimeUnit.MILLISECONDS);
+        this.cleaner = AppRuntime.getInstance().timer()
+                .scheduleAtFixedRate(this::cleanup, ttlMillis, ttlMillis, TimeUnit.MILLISECONDS);
     }
 
     public boolean isEmpty() {
@@ -103,6 +105,6 @@ public class SlidingCache<K, V> {
     }
 
     public void shutdown() {
-        cleaner.shutdown();
+        cleaner.cancel(false);
     }
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.keymouseshare.keyboard;
+
+import com.keymouseshare.util.AppRuntime;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 边缘检测的唤醒次数测试（仅Linux）
+ * <p>
+ * 从 /proc/self/task/&lt;tid&gt;/status 读取线程的主动与被动上下文切换次数，每次主动切换对应线程睡眠后被唤醒一次。
+ * 依次测量：
+ * <ul>
+ *     <li>jvm：不运行边缘检测，整个进程的基线</li>
+ *     <li>before：原先的轮询方式，独立线程每5ms执行一次检测</li>
+ *     <li>after：{@link EdgeWatcher}，鼠标静止时不再触发检测</li>
+ *     <li>after 1kHz：{@link EdgeWatcher}，虚拟鼠标位置以1kHz持续更新</li>
+ * </ul>
+ * 输出检测线程与整个进程每秒的上下文切换次数以及检测次数；检测逻辑为空操作，只测调度本身。
+ * <p>
+ * 运行：
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.keymouseshare.keyboard.EdgeWatcherWakeups
+ * </pre>
+ */
+public final class EdgeWatcherWakeups {
+    // 每个阶段的测量时长(毫秒)
+    private static final long DURATION = Long.getLong("durationMs", 10_000);
+    // 原先轮询的间隔(毫秒)
+    private static final long POLL_INTERVAL = 5;
+    // 移动阶段虚拟鼠标位置的更新频率(Hz)
+    private static final int MOVE_RATE = 1000;
+
+    private static final String POLLER_THREAD = "Edge-Poller";
+    private static final String TIMER_THREAD = "kms-timer";
+
+    private EdgeWatcherWakeups() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LongAdder checks = new LongAdder();
+        Runnable check = checks::increment;
+
+        System.out.printf("%-12s %14s %14s %14s %10s%n", "phase", "thread vol/s", "thread inv/s", "process vol/s", "checks/s");
+
+        // 先创建共享定时线程，避免其启动计入after阶段
+        AppRuntime.getInstance().timer().submit(() -> { }).get();
+        measure("jvm", null, checks, () -> sleep(DURATION));
+
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, POLLER_THREAD);
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleAtFixedRate(check, 0, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        sleep(200);
+        measure("before", POLLER_THREAD, checks, () -> sleep(DURATION));
+        poller.shutdownNow();
+        poller.awaitTermination(1, TimeUnit.SECONDS);
+
+        EdgeWatcher watcher = new EdgeWatcher("Edge-Watcher", check);
+        watcher.start();
+        sleep(200);
+        measure("after", TIMER_THREAD, checks, () -> sleep(DURATION));
+        measure("after 1kHz", TIMER_THREAD, checks, () -> {
+            long interval = TimeUnit.SECONDS.toNanos(1) / MOVE_RATE;
+            long start = System.nanoTime();
+            for (long i = 0; i < DURATION * MOVE_RATE / 1000; i++) {
+                long wait = start + i * interval - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                watcher.onLocationChanged();
+            }
+        });
+        watcher.stop();
+        AppRuntime.getInstance().shutdown();
+    }
+
+    private static void measure(String phase, String threadName, LongAdder checks, Runnable body) throws IOException {
+        long[] threadBefore = threadName != null ? switches(threadName) : new long[2];
+        long processBefore = switches(null)[0];
+        long checksBefore = checks.sum();
+        long start = System.nanoTime();
+        body.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] threadAfter = threadName != null ? switches(threadName) : new long[2];
+        long processAfter = switches(null)[0];
+        System.out.printf("%-12s %14s %14s %14.1f %10.1f%n", phase,
+                threadName != null ? String.format("%.1f", (threadAfter[0] - threadBefore[0]) / seconds) : "-",
+                threadName != null ? String.format("%.1f", (threadAfter[1] - threadBefore[1]) / seconds) : "-",
+                (processAfter - processBefore) / seconds, (checks.sum() - checksBefore) / seconds);
+    }
+
+    /**
+     * 指定名称的线程（为null时为所有线程）累计的主动与被动上下文切换次数
+     */
+    private static long[] switches(String threadName) throws IOException {
+        long[] total = new long[2];
+        try (DirectoryStream<Path> tasks = Files.newDirectoryStream(Paths.get("/proc/self/task"))) {
+            for (Path task : tasks) {
+                try {
+                    if (threadName != null && !threadName.equals(
+                            new String(Files.readAllBytes(task.resolve("comm")), StandardCharsets.UTF_8).trim())) {
+                        continue;
+                    }
+                    for (String line : Files.readAllLines(task.resolve("status"))) {
+                        if (line.startsWith("voluntary_ctxt_switches:")) {
+                            total[0] += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                        } else if (line.startsWith("nonvoluntary_ctxt_switches:")) {
+                            total[1] += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                        }
+                    }
+                } catch (IOException e) {
+                    // 线程已退出
+                }
+            }
+        }
+        return total;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.keymouseshare.keyboard;
+
+import com.keymouseshare.util.LatencyRecorder;
+
+import java.awt.AWTException;
+import java.awt.GraphicsEnvironment;
+import java.awt.Robot;
+import java.awt.event.KeyEvent;
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按键注入的吞吐与延迟测试
+ * <p>
+ * 以固定速率提交按键（每个按键一次按下加一次释放），统计持续注入速率（keys/s），以及每个事件
+ * 从提交到 {@link Robot} 调用返回的延迟分位数。对比两种注入方式：
+ * <ul>
+ *     <li>before：原先的单线程执行器，每次按下/释放后固定 robot.delay(50)</li>
+ *     <li>after：{@link BaseMouseKeyBoard} 的有序注入流水线，只在同一按键按下与释放之间补足最小间隔</li>
+ * </ul>
+ * 有显示环境时使用真实的Robot（在Xvfb下运行即注入到虚拟X服务器）；无显示环境时使用不产生系统事件的空Robot，
+ * 此时只测量调度与等待本身的开销。
+ * <p>
+ * 运行：
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * xvfb-run java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.keymouseshare.keyboard.InjectionBenchmark
+ * </pre>
+ */
+public final class InjectionBenchmark {
+    // 每种速率提交的时长(毫秒)
+    private static final long DURATION = Long.getLong("durationMs", 2000);
+    // 提交结束后等待注入完成的最长时间(毫秒)
+    private static final long DRAIN_TIMEOUT = 60_000;
+
+    // 提交速率(keys/s)，0表示不限速，一次性提交
+    private static final int[] RATES = {5, 10, 20, 50, 0};
+    private static final int BURST_KEYS = 200;
+
+    private InjectionBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        TimingRobot robot = TimingRobot.create();
+        System.out.printf("robot: %s%n", robot.real ? "real (" + System.getenv("DISPLAY") + ")" : "stub (headless)");
+        BaseMouseKeyBoard pipeline = new BaseMouseKeyBoard(robot);
+        ExecutorBaseline baseline = new ExecutorBaseline(robot);
+
+        // 预热，结果不输出
+        run(robot, pipeline::keyPress, pipeline::keyRelease, 200);
+
+        System.out.printf("%-7s %8s %9s %9s %9s %9s %7s%n", "impl", "offered", "sustained", "p50(ms)", "p99(ms)", "max(ms)", "keys");
+        for (int rate : RATES) {
+            print("before", rate, run(robot, baseline::keyPress, baseline::keyRelease, rate));
+            print("after", rate, run(robot, pipeline::keyPress, pipeline::keyRelease, rate));
+        }
+        pipeline.shutdown();
+        baseline.shutdown();
+    }
+
+    private static void print(String impl, int rate, Result result) {
+        LatencyRecorder latency = result.latency;
+        System.out.printf("%-7s %8s %9.1f %9.3f %9.3f %9.3f %7d%n", impl, rate == 0 ? "burst" : String.valueOf(rate),
+                result.keysPerSecond, latency.percentile(50) / 1e6, latency.percentile(99) / 1e6,
+                latency.percentile(100) / 1e6, result.keys);
+    }
+
+    private static Result run(TimingRobot robot, KeyAction press, KeyAction release, int rate) throws InterruptedException {
+        int keys = rate == 0 ? BURST_KEYS : (int) (rate * DURATION / 1000);
+        long[] submitted = new long[keys * 2];
+        LatencyRecorder latency = new LatencyRecorder("提交到注入延迟", submitted.length, 0);
+        robot.begin(submitted, latency);
+
+        long interval = rate == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        for (int i = 0; i < keys; i++) {
+            long due = start + i * interval;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int keyCode = KeyEvent.VK_A + i % 26;
+            submitted[2 * i] = System.nanoTime();
+            press.run(keyCode);
+            submitted[2 * i + 1] = System.nanoTime();
+            release.run(keyCode);
+        }
+        long finished = robot.awaitInjected(submitted.length, DRAIN_TIMEOUT);
+        int injected = robot.injected();
+        double keysPerSecond = injected / 2 * 1e9 / ((finished > 0 ? finished : System.nanoTime()) - start);
+        return new Result(keys, keysPerSecond, latency);
+    }
+
+    private static final class Result {
+        final int keys;
+        final double keysPerSecond;
+        final LatencyRecorder latency;
+
+        Result(int keys, double keysPerSecond, LatencyRecorder latency) {
+            this.keys = keys;
+            this.keysPerSecond = keysPerSecond;
+            this.latency = latency;
+        }
+    }
+
+    @FunctionalInterface
+    private interface KeyAction {
+        void run(int keyCode);
+    }
+
+    /**
+     * 原先的注入方式：单线程执行器，每次按下/释放后固定等待50ms
+     */
+    private static final class ExecutorBaseline {
+        private final Robot robot;
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "Keyboard-Handler");
+            t.setDaemon(true);
+            return t;
+        });
+
+        ExecutorBaseline(Robot robot) {
+            this.robot = robot;
+        }
+
+        void keyPress(int keyCode) {
+            executor.execute(() -> {
+                robot.keyPress(keyCode);
+                robot.delay(50);
+            });
+        }
+
+        void keyRelease(int keyCode) {
+            executor.execute(() -> {
+                robot.keyRelease(keyCode);
+                robot.delay(50);
+            });
+        }
+
+        void shutdown() {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 在按键注入完成时记录延迟的Robot；事件按提交顺序注入，第n次注入对应第n次提交
+     */
+    private static class TimingRobot extends Robot {
+        // 是否为真实的Robot，空Robot未经过构造器，不能调用父类的注入方法
+        private boolean real;
+        private volatile long[] submitted;
+        private volatile LatencyRecorder latency;
+        private volatile int injected;
+        private volatile long lastInjected;
+
+        TimingRobot() throws AWTException {
+            super();
+        }
+
+        static TimingRobot create() throws Exception {
+            if (!GraphicsEnvironment.isHeadless()) {
+                TimingRobot robot = new TimingRobot();
+                robot.real = true;
+                return robot;
+            }
+            Field field = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (TimingRobot) ((sun.misc.Unsafe) field.get(null)).allocateInstance(TimingRobot.class);
+        }
+
+        void begin(long[] submitted, LatencyRecorder latency) {
+            this.latency = latency;
+            this.injected = 0;
+            this.lastInjected = 0;
+            this.submitted = submitted;
+        }
+
+        @Override
+        public void keyPress(int keycode) {
+            if (real) {
+                super.keyPress(keycode);
+            }
+            recordInjected();
+        }
+
+        @Override
+        public void keyRelease(int keycode) {
+            if (real) {
+                super.keyRelease(keycode);
+            }
+            recordInjected();
+        }
+
+        @Override
+        public void mouseMove(int x, int y) {
+            if (real) {
+                super.mouseMove(x, y);
+            }
+        }
+
+        // 只由注入线程调用
+        private void recordInjected() {
+            long[] current = submitted;
+            int index = injected;
+            if (current == null || index >= current.length) {
+                return;
+            }
+            long now = System.nanoTime();
+            latency.record(now - current[index]);
+            lastInjected = now;
+            injected = index + 1;
+        }
+
+        int injected() {
+            return injected;
+        }
+
+        /**
+         * 等待指定数量的事件注入完成，返回最后一次注入的时间，超时返回0
+         */
+        long awaitInjected(int events, long timeoutMillis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (injected < events) {
+                if (System.nanoTime() > deadline) {
+                    return 0;
+                }
+                Thread.sleep(1);
+            }
+            return lastInjected;
+        }
+    }
+}
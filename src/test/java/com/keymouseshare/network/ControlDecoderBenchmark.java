@@ -0,0 +1,99 @@
+package com.keymouseshare.network;
+
+import com.keymouseshare.bean.ControlEvent;
+import com.keymouseshare.bean.ControlEventType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * 控制消息解码器的吞吐与分配测试
+ * <p>
+ * 预先编码100万帧：按给定比例混合JSON编码的按键事件与二进制编码的鼠标移动，拼成一条字节流，
+ * 再按固定种子随机切成1~512字节的片段依次写入 {@link ControlMessageDecoder}，模拟TCP任意拆包。
+ * 输出每秒解码帧数，以及解码线程平均每帧分配的字节数（JVM支持线程分配统计时）。
+ * <p>
+ * 运行：
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.keymouseshare.network.ControlDecoderBenchmark
+ * </pre>
+ */
+public final class ControlDecoderBenchmark {
+    private static final int FRAMES = 1_000_000;
+    // 随机切片的最大长度
+    private static final int MAX_CHUNK = 512;
+    private static final int RUNS = 5;
+    private static final long SPLIT_SEED = 42L;
+
+    // JSON帧所占比例(百分比)
+    private static final int[] JSON_PERCENTS = {10, 100};
+
+    private ControlDecoderBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        for (int jsonPercent : JSON_PERCENTS) {
+            ByteBuf stream = encodeStream(jsonPercent);
+            System.out.printf("JSON %d%%, %d frames, %d bytes%n", jsonPercent, FRAMES, stream.readableBytes());
+            for (int run = 0; run < RUNS; run++) {
+                decode(stream, run);
+            }
+            stream.release();
+        }
+    }
+
+    private static ByteBuf encodeStream(int jsonPercent) {
+        ControlEvent key = new ControlEvent("192.168.1.20", ControlEventType.KeyPressed.name(), 30);
+        EmbeddedChannel encoder = new EmbeddedChannel(new ControlMessageEncoder());
+        encoder.writeOutbound(key);
+        ByteBuf json = encoder.readOutbound();
+
+        ByteBuf stream = Unpooled.buffer();
+        for (int i = 0; i < FRAMES; i++) {
+            if (i % 100 < jsonPercent) {
+                stream.writeBytes(json, json.readerIndex(), json.readableBytes());
+            } else {
+                ControlEventCodec.encodeMouseMove(stream, i % 1920, i % 1080);
+            }
+        }
+        json.release();
+        return stream;
+    }
+
+    private static void decode(ByteBuf stream, int run) {
+        Random random = new Random(SPLIT_SEED);
+        EmbeddedChannel decoder = new EmbeddedChannel(new ControlMessageDecoder());
+        int total = stream.readableBytes();
+        long frames = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int offset = 0; offset < total; ) {
+            int length = Math.min(total - offset, 1 + random.nextInt(MAX_CHUNK));
+            decoder.writeInbound(stream.retainedSlice(offset, length));
+            offset += length;
+            while (decoder.readInbound() != null) {
+                frames++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        decoder.finishAndReleaseAll();
+        System.out.printf("  run %d: %d frames, %.0f ms, %.2f M frames/s, %s%n", run, frames, elapsed / 1e6,
+                frames * 1e3 / elapsed, allocated >= 0 ? String.format("%.0f B/frame", allocated / (double) frames) : "allocation n/a");
+    }
+
+    /**
+     * 当前线程累计分配的字节数，不支持时返回一个负数
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().threadId());
+        }
+        return Long.MIN_VALUE / 2;
+    }
+}
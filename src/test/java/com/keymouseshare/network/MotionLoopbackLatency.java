@@ -0,0 +1,186 @@
+package com.keymouseshare.network;
+
+import com.keymouseshare.util.AppRuntime;
+import com.keymouseshare.util.LatencyRecorder;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * UDP运动通道的回环延迟测试
+ * <p>
+ * 在本机回环上建立真实的 {@link MotionChannel.Sender} 与 {@link MotionChannel.Receiver}，
+ * 以1kHz发送一段段移动（每段之间停顿，触发尾部补发），发送端按固定种子模拟丢包，
+ * 统计每个位置从发送到被接收端交给注入流水线的延迟分位数，以及最终未能送达的位置数。
+ * 分别测量不带冗余与自适应冗余两种配置；自适应时每秒按接收端的丢包率调整一次，与客户端上报周期一致。
+ * 分位数只统计已送达的位置，丢失的位置计入lost列。
+ * <p>
+ * 之后测量吞吐：发送端在EventLoop中不间断地连续发送，统计每秒发出与接收端应用的位置数。
+ * <p>
+ * 传输由 {@link TransportSelector} 选择，每次运行只测一种，用 -Dkeymouseshare.transport=nio|epoll|io_uring 指定，
+ * 不可用时按选择器的规则回退，实际使用的传输在第一行输出。
+ * <p>
+ * 运行：
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Dkeymouseshare.transport=nio -cp target/test-classes:target/classes:$(cat target/cp.txt) com.keymouseshare.network.MotionLoopbackLatency
+ * </pre>
+ */
+public final class MotionLoopbackLatency {
+    // 发送频率(Hz)
+    private static final int RATE = 1000;
+    // 每段移动的位置数与段间停顿(毫秒)，停顿需大于尾部补发的等待时间
+    private static final int STROKE_MOVES = 200;
+    private static final int STROKE_PAUSE = 50;
+    // 每种配置发送的位置数
+    private static final int MOVES = Integer.getInteger("moves", 5000);
+    // 发送结束后等待迟到数据报与尾部补发的时间(毫秒)
+    private static final long SETTLE = 200;
+
+    private static final double[] LOSSES = {0, 0.01, 0.02, 0.03, 0.05};
+
+    // 吞吐测试发送的位置数，以及EventLoop每个任务连续发送的位置数
+    private static final int THROUGHPUT_MOVES = Integer.getInteger("throughputMoves", 500_000);
+    private static final int THROUGHPUT_BATCH = 1000;
+    private static final int THROUGHPUT_RUNS = 3;
+
+    private MotionLoopbackLatency() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        EventLoopGroup group = TransportSelector.newEventLoopGroup(1, "motion-bench");
+        System.out.printf("transport: %s%n", TransportSelector.current());
+        try {
+            // 预热，结果不输出
+            run(group.next(), 0.03, 0);
+            System.out.printf("%-6s %-10s %8s %9s %9s %9s %8s%n", "loss", "redundancy", "applied", "p50(ms)", "p99(ms)", "max(ms)", "lost");
+            for (double loss : LOSSES) {
+                // 偏好1表示固定不带冗余，0表示自适应
+                print(loss, "0", run(group.next(), loss, 1));
+                print(loss, "adaptive", run(group.next(), loss, 0));
+            }
+            System.out.printf("%n%-6s %9s %12s %12s %8s%n", "run", "moves", "sent(k/s)", "applied(k/s)", "lost");
+            for (int run = 0; run < THROUGHPUT_RUNS; run++) {
+                throughput(group.next(), run);
+            }
+        } finally {
+            group.shutdownGracefully();
+            AppRuntime.getInstance().shutdown();
+        }
+    }
+
+    private static void print(double loss, String redundancy, LatencyRecorder latency) {
+        System.out.printf("%-6s %-10s %8d %9.3f %9.3f %9.3f %8d%n", String.format("%.0f%%", loss * 100), redundancy,
+                latency.getCount(), latency.percentile(50) / 1e6, latency.percentile(99) / 1e6,
+                latency.percentile(100) / 1e6, MOVES - latency.getCount());
+    }
+
+    private static LatencyRecorder run(EventLoop eventLoop, double loss, int preference) throws Exception {
+        AtomicLongArray sentNanos = new AtomicLongArray(MOVES);
+        LatencyRecorder latency = new LatencyRecorder("发送到应用延迟", MOVES, 0);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        // x为位置编号，同一位置可能先后经冗余与原数据报到达，只记录第一次
+        MotionChannel.Receiver receiver = new MotionChannel.Receiver(loopback, (x, y) -> {
+            long sent = sentNanos.getAndSet(x, 0);
+            if (sent != 0) {
+                latency.recordSince(sent);
+            }
+        });
+        receiver.bind().sync();
+        Channel channel = MotionChannel.connect(eventLoop, new InetSocketAddress(loopback, receiver.getPort())).sync().channel();
+        MotionChannel.Sender sender = new MotionChannel.Sender(channel, "loopback", preference, loss, 1L);
+
+        CountDownLatch done = new CountDownLatch(1);
+        Runnable tick = new Runnable() {
+            private int next = 0;
+            private int pause = 0;
+            private int ticks = 0;
+
+            @Override
+            public void run() {
+                if (++ticks % RATE == 0) {
+                    int lossPermille = receiver.takeLossPermille();
+                    if (lossPermille >= 0) {
+                        sender.onLossReport(lossPermille);
+                    }
+                }
+                if (pause > 0) {
+                    pause--;
+                    return;
+                }
+                if (next == MOVES) {
+                    done.countDown();
+                    return;
+                }
+                sentNanos.set(next, System.nanoTime());
+                sender.send(next, next % STROKE_MOVES);
+                next++;
+                if (next % STROKE_MOVES == 0) {
+                    pause = STROKE_PAUSE;
+                }
+            }
+        };
+        ScheduledFuture<?> future = eventLoop.scheduleAtFixedRate(tick, 0, TimeUnit.SECONDS.toNanos(1) / RATE, TimeUnit.NANOSECONDS);
+        done.await();
+        future.cancel(false);
+        Thread.sleep(SETTLE);
+        eventLoop.submit(sender::close).sync();
+        receiver.close();
+        return latency;
+    }
+
+    private static void throughput(EventLoop eventLoop, int run) throws Exception {
+        AtomicLong applied = new AtomicLong();
+        AtomicLong lastApplied = new AtomicLong();
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        MotionChannel.Receiver receiver = new MotionChannel.Receiver(loopback, (x, y) -> {
+            applied.incrementAndGet();
+            lastApplied.set(System.nanoTime());
+        });
+        receiver.bind().sync();
+        Channel channel = MotionChannel.connect(eventLoop, new InetSocketAddress(loopback, receiver.getPort())).sync().channel();
+        // 不带冗余，每个数据报只携带一个位置
+        MotionChannel.Sender sender = new MotionChannel.Sender(channel, "loopback", 1, 0, 1L);
+
+        long start = System.nanoTime();
+        long[] sentDone = new long[1];
+        CountDownLatch done = new CountDownLatch(1);
+        Runnable batch = new Runnable() {
+            private int next = 0;
+
+            @Override
+            public void run() {
+                int end = Math.min(next + THROUGHPUT_BATCH, THROUGHPUT_MOVES);
+                for (; next < end; next++) {
+                    sender.send(next, next % STROKE_MOVES);
+                }
+                if (next < THROUGHPUT_MOVES) {
+                    // 让出EventLoop，处理写出与其它任务
+                    eventLoop.execute(this);
+                } else {
+                    sentDone[0] = System.nanoTime();
+                    done.countDown();
+                }
+            }
+        };
+        eventLoop.execute(batch);
+        done.await();
+        Thread.sleep(SETTLE);
+        eventLoop.submit(sender::close).sync();
+        receiver.close();
+
+        long received = applied.get();
+        System.out.printf("%-6d %9d %12.1f %12.1f %8d%n", run, THROUGHPUT_MOVES,
+                THROUGHPUT_MOVES * 1e6 / (sentDone[0] - start),
+                received * 1e6 / (lastApplied.get() - start), THROUGHPUT_MOVES - received);
+    }
+}
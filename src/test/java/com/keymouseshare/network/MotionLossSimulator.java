@@ -0,0 +1,119 @@
+package com.keymouseshare.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.SplittableRandom;
+
+/**
+ * UDP运动通道的确定性丢包模拟
+ * <p>
+ * 发送端写入 {@link EmbeddedChannel}，数据报按顺序直接交给接收端，不经过网络和定时器：
+ * 一段移动结束时直接调用尾部补发，代替真实链路上20ms后的定时补发；自适应冗余每1000个位置
+ * 按接收端的丢包率调整一次，对应1kHz下每秒一次的上报。轨迹与丢包序列都由固定种子生成，
+ * 同一版本的代码每次运行输出完全相同。
+ * <p>
+ * 对每种丢包率与冗余个数输出：
+ * 恢复率（冗余补回的位置占所有缺失位置的比例）、残余丢失率（最终未应用的位置占全部位置的比例）、
+ * 落点正确率（每段移动结束后光标停在最后位置的比例）以及带宽开销（冗余字节相对不带冗余时的比例）。
+ * <p>
+ * 运行：
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.keymouseshare.network.MotionLossSimulator
+ * </pre>
+ */
+public final class MotionLossSimulator {
+    // 轨迹段数与每段的位置数范围
+    private static final int STROKES = 2000;
+    private static final int MIN_STROKE_MOVES = 20;
+    private static final int MAX_STROKE_MOVES = 300;
+    // 相邻位置的最大偏移(像素)，对应1kHz下的快速移动
+    private static final int MAX_STEP = 12;
+    // 自适应冗余的上报间隔(位置数)
+    private static final int REPORT_INTERVAL = 1000;
+
+    private static final long TRAJECTORY_SEED = 42L;
+    private static final long LOSS_SEED = 7L;
+
+    private static final double[] LOSSES = {0, 0.01, 0.02, 0.03, 0.05, 0.10};
+    // 客户端声明的冗余偏好：N+1为固定N个，0为自适应
+    private static final int[] PREFERENCES = {1, 2, 3, 4, 5, 0};
+
+    private static final InetSocketAddress SERVER = new InetSocketAddress(InetAddress.getLoopbackAddress(), 1);
+    private static final InetSocketAddress CLIENT = new InetSocketAddress(InetAddress.getLoopbackAddress(), 2);
+
+    private MotionLossSimulator() {
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%-6s %-10s %10s %10s %10s %10s %8s%n",
+                "loss", "redundancy", "recovered", "residual", "landing", "overhead", "tails");
+        for (double loss : LOSSES) {
+            for (int preference : PREFERENCES) {
+                run(loss, preference);
+            }
+        }
+    }
+
+    private static void run(double loss, int preference) {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        MotionChannel.Sender sender = new MotionChannel.Sender(channel, "simulator", preference, loss, LOSS_SEED);
+        int[] applied = new int[2];
+        MotionChannel.Receiver receiver = new MotionChannel.Receiver(SERVER.getAddress(), (x, y) -> {
+            applied[0] = x;
+            applied[1] = y;
+        });
+
+        SplittableRandom trajectory = new SplittableRandom(TRAJECTORY_SEED);
+        long positions = 0;
+        int landed = 0;
+        int x = 0;
+        int y = 0;
+        for (int stroke = 0; stroke < STROKES; stroke++) {
+            int moves = trajectory.nextInt(MIN_STROKE_MOVES, MAX_STROKE_MOVES + 1);
+            for (int i = 0; i < moves; i++) {
+                x += trajectory.nextInt(-MAX_STEP, MAX_STEP + 1);
+                y += trajectory.nextInt(-MAX_STEP, MAX_STEP + 1);
+                sender.send(x, y);
+                deliver(channel, receiver);
+                if (++positions % REPORT_INTERVAL == 0) {
+                    int lossPermille = receiver.takeLossPermille();
+                    if (lossPermille >= 0) {
+                        sender.onLossReport(lossPermille);
+                    }
+                }
+            }
+            // 移动停止，相当于尾部补发的定时器到期
+            sender.repeatTail();
+            deliver(channel, receiver);
+            if (applied[0] == x && applied[1] == y) {
+                landed++;
+            }
+        }
+
+        long recovered = receiver.getRecoveredCount();
+        long lost = receiver.getLostCount();
+        System.out.printf("%-6s %-10s %9.1f%% %9.2f%% %9.1f%% %9.1f%% %8d%n",
+                String.format("%.0f%%", loss * 100), preference == 0 ? "adaptive" : String.valueOf(preference - 1),
+                recovered + lost > 0 ? recovered * 100.0 / (recovered + lost) : 100.0,
+                lost * 100.0 / positions, landed * 100.0 / STROKES, sender.bandwidthOverhead(), sender.getTailRepeatCount());
+        channel.finishAndReleaseAll();
+    }
+
+    private static void deliver(EmbeddedChannel channel, MotionChannel.Receiver receiver) {
+        ByteBuf buf;
+        while ((buf = channel.readOutbound()) != null) {
+            DatagramPacket packet = new DatagramPacket(buf, CLIENT, SERVER);
+            try {
+                receiver.onPacket(packet);
+            } finally {
+                packet.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.keymouseshare.network;
+
+import com.keymouseshare.bean.ScreenInfo;
+import com.keymouseshare.storage.VirtualDesktopStorage;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ResourceLeakDetector;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+
+/**
+ * 鼠标移动发送路径的分配测试
+ * <p>
+ * 按 MainApplication.onMouseMove 在边缘模式下的步骤处理每个钩子坐标：按激活屏幕映射到虚拟桌面并写入
+ * {@link VirtualDesktopStorage}，读出快照换算为目标屏幕内坐标，经 {@link ControlServer#sendMouseMove(int, int, int)}
+ * 交给 {@link ControlSession}，再由EventLoop编码写出并flush。通道为 {@link EmbeddedChannel}，
+ * EventLoop的任务在调用线程中执行，因此当前线程的分配字节数覆盖了从钩子回调到编码器的整条路径。
+ * 写出的帧由测试读出并释放，不计入JNativeHook自身创建的事件对象。
+ * <p>
+ * 分别测量二进制编码与旧版本JSON编码的连接，输出每次移动平均分配的字节数。
+ * Netty默认按1/128抽样跟踪ByteBuf泄漏，被抽中的缓冲区会分配跟踪记录；
+ * 加 -Dio.netty.leakDetection.level=disabled 可只看发送路径本身。
+ * <p>
+ * 运行：
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.keymouseshare.network.MouseMoveAllocationBenchmark
+ * </pre>
+ */
+public final class MouseMoveAllocationBenchmark {
+    private static final int WARMUP_MOVES = 200_000;
+    private static final int MOVES = 1_000_000;
+    private static final int RUNS = 3;
+
+    private static final String CLIENT_IP = "192.168.1.20";
+
+    private MouseMoveAllocationBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        // 客户端屏幕位于虚拟桌面右侧，本机屏幕到客户端屏幕按1.5倍缩放
+        ScreenInfo screen = new ScreenInfo(CLIENT_IP, "client", 2880, 1620);
+        screen.setVx(1920);
+        VirtualDesktopStorage storage = VirtualDesktopStorage.getInstance();
+        // 无显示环境下 setActiveScreen 无法读取本机屏幕尺寸，直接设置激活屏幕与缩放比例
+        setField(storage, "activeScreen", screen);
+        setField(storage, "mouseLocationTransform", new double[]{1.5, 1.5});
+
+        System.out.printf("leak detection: %s%n", ResourceLeakDetector.getLevel());
+        for (boolean binary : new boolean[]{true, false}) {
+            EmbeddedChannel channel = new EmbeddedChannel(new ControlMessageEncoder(), new ChannelInboundHandlerAdapter());
+            ChannelHandlerContext ctx = channel.pipeline().lastContext();
+            ControlServer server = new ControlServer();
+            ControlSession session = server.register(CLIENT_IP, ctx);
+            session.setBinary(binary);
+
+            System.out.printf("%s encoding%n", binary ? "binary" : "JSON");
+            run(storage, screen, server, session.getId(), channel, WARMUP_MOVES, -1);
+            for (int run = 0; run < RUNS; run++) {
+                run(storage, screen, server, session.getId(), channel, MOVES, run);
+            }
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    private static void run(VirtualDesktopStorage storage, ScreenInfo screen, ControlServer server, int sessionId,
+                            EmbeddedChannel channel, int moves, int run) {
+        long frames = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < moves; i++) {
+            int x = i % 1920;
+            int y = i % 1080;
+            // 与 MainApplication.onMouseMove 相同的映射步骤
+            double[] transform = storage.getMouseLocationTransform();
+            storage.setMouseLocation((int) (screen.getVx() + x * transform[0]), (int) (screen.getVy() + y * transform[1]));
+            long location = storage.getMouseLocationSnapshot();
+            server.sendMouseMove(sessionId,
+                    VirtualDesktopStorage.locationX(location) - screen.getVx(),
+                    VirtualDesktopStorage.locationY(location) - screen.getVy());
+            // 执行会话提交到EventLoop的写出任务
+            channel.runPendingTasks();
+            ByteBuf frame;
+            while ((frame = channel.readOutbound()) != null) {
+                frame.release();
+                frames++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        if (run >= 0) {
+            System.out.printf("  run %d: %d moves, %d frames, %.2f M moves/s, %s%n", run, moves, frames, moves * 1e3 / elapsed,
+                    allocated >= 0 ? String.format("%.3f B/move", allocated / (double) moves) : "allocation n/a");
+        }
+    }
+
+    private static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    /**
+     * 当前线程累计分配的字节数，不支持时返回一个负数
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().threadId());
+        }
+        return Long.MIN_VALUE / 2;
+    }
+}